@@ -9,6 +9,7 @@ import java.util.List;
 
 import static io.restassured.RestAssured.given;
 import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 
 @QuarkusIntegrationTest
 @TestMethodOrder(MethodOrderer.OrderAnnotation.class)
@@ -79,14 +80,21 @@ class QuarkusAiIntegrationTest {
     void shouldUploadTestDocument() {
         String testContent = "Integration test document about machine learning algorithms.";
         
-        given()
+        String jobId = given()
                 .multiPart("file", "integration-test.txt", new ByteArrayInputStream(testContent.getBytes()), "text/plain")
                 .formParam("filename", "integration-test.txt")
                 .when()
                 .post("/documents/upload")
                 .then()
-                .statusCode(200)
-                .body(containsString("uploaded successfully"));
+                .statusCode(202)
+                .body("stage", equalTo("QUEUED"))
+                .extract()
+                .jsonPath()
+                .getString("jobId");
+
+        // Wait for the asynchronous ingestion job to finish
+        String stage = waitForJob(jobId);
+        assertEquals("STORED", stage);
 
         // Verify document count increased by 1
         given()
@@ -159,6 +167,56 @@ class QuarkusAiIntegrationTest {
         }
     }
 
+    @Test
+    @Order(7)
+    void shouldUploadDocumentBatch() {
+        List<String> ids = given()
+                .multiPart("files", "batch-test-1.txt", new ByteArrayInputStream("Batch test document about databases.".getBytes()), "text/plain")
+                .multiPart("files", "batch-test-2.txt", new ByteArrayInputStream("Batch test document about networks.".getBytes()), "text/plain")
+                .when()
+                .post("/documents/upload/batch")
+                .then()
+                .statusCode(200)
+                .body("results.size()", equalTo(2))
+                .body("results.filename", contains("batch-test-1.txt", "batch-test-2.txt"))
+                .body("errors", empty())
+                .extract()
+                .jsonPath()
+                .getList("successful.id", String.class);
+
+        testDocumentIds.addAll(ids);
+    }
+
+    @Test
+    void shouldRejectEmptyDocumentBatch() {
+        given()
+                .multiPart("fileNames", "nothing.txt")
+                .when()
+                .post("/documents/upload/batch")
+                .then()
+                .statusCode(400);
+    }
+
+    @Test
+    void shouldReportIngestionQueueStats() {
+        given()
+                .when()
+                .get("/documents/jobs/stats")
+                .then()
+                .statusCode(200)
+                .body("workers", greaterThan(0))
+                .body("queueDepth", greaterThanOrEqualTo(0));
+    }
+
+    @Test
+    void shouldHandleUnknownIngestionJob() {
+        given()
+                .when()
+                .get("/documents/jobs/non-existent-job")
+                .then()
+                .statusCode(404);
+    }
+
     @Test
     void shouldHandleInvalidDocumentDeletion() {
         given()
@@ -194,4 +252,27 @@ class QuarkusAiIntegrationTest {
                 .then()
                 .statusCode(404);
     }
+
+    private static String waitForJob(String jobId) {
+        for (int attempt = 0; attempt < 120; attempt++) {
+            String stage = given()
+                    .when()
+                    .get("/documents/jobs/" + jobId)
+                    .then()
+                    .statusCode(200)
+                    .extract()
+                    .jsonPath()
+                    .getString("stage");
+            if ("STORED".equals(stage) || "FAILED".equals(stage)) {
+                return stage;
+            }
+            try {
+                Thread.sleep(500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return stage;
+            }
+        }
+        return "TIMEOUT";
+    }
 }
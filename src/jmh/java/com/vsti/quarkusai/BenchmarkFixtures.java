@@ -0,0 +1,169 @@
+package com.vsti.quarkusai;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Shared inputs and in-process stand-ins for Ollama and Qdrant, so the benchmarks only measure our own code
+final class BenchmarkFixtures {
+
+    static final int EMBEDDING_DIMENSION = 768;
+
+    private static final String[] WORDS = {
+        "the", "document", "describes", "how", "a", "service", "stores", "vectors", "for", "each", "chunk",
+        "and", "retrieval", "returns", "relevant", "context", "to", "model", "when", "user", "asks",
+        "question", "about", "configuration", "deployment", "memory", "latency", "throughput", "cluster"
+    };
+
+    private BenchmarkFixtures() {
+    }
+
+    // Deterministic pseudo-English text made of sentences and paragraphs
+    static String text(int characters, long seed) {
+        Random random = new Random(seed);
+        StringBuilder text = new StringBuilder(characters + 100);
+        int sentences = 0;
+        while (text.length() < characters) {
+            int words = 8 + random.nextInt(12);
+            for (int i = 0; i < words; i++) {
+                String word = WORDS[random.nextInt(WORDS.length)];
+                text.append(i == 0 ? Character.toUpperCase(word.charAt(0)) + word.substring(1) : word);
+                text.append(i == words - 1 ? ". " : " ");
+            }
+            if (++sentences % 6 == 0) {
+                text.append("\n\n");
+            }
+        }
+        return text.toString();
+    }
+
+    static List<String> paragraphs(String text) {
+        return List.of(text.split("\n\n"));
+    }
+
+    static byte[] pdf(String text) throws IOException {
+        List<String> lines = wrap(text, 90);
+        try (PDDocument document = new PDDocument(); ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            for (int start = 0; start < lines.size(); start += 50) {
+                PDPage page = new PDPage();
+                document.addPage(page);
+                try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                    content.beginText();
+                    content.setFont(PDType1Font.HELVETICA, 10);
+                    content.setLeading(14);
+                    content.newLineAtOffset(50, 750);
+                    for (String line : lines.subList(start, Math.min(start + 50, lines.size()))) {
+                        content.showText(line);
+                        content.newLine();
+                    }
+                    content.endText();
+                }
+            }
+            document.save(out);
+            return out.toByteArray();
+        }
+    }
+
+    static byte[] docx(String text) throws IOException {
+        try (XWPFDocument document = new XWPFDocument(); ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            for (String paragraph : paragraphs(text)) {
+                document.createParagraph().createRun().setText(paragraph.strip());
+            }
+            document.write(out);
+            return out.toByteArray();
+        }
+    }
+
+    static byte[] txt(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Returns a random but stable unit vector per text, without the cost of a real model
+    static EmbeddingModel fakeEmbeddingModel() {
+        return segments -> Response.from(segments.stream()
+            .map(segment -> embedding(segment.text()))
+            .toList());
+    }
+
+    static Embedding embedding(String text) {
+        Random random = new Random(text.hashCode());
+        float[] vector = new float[EMBEDDING_DIMENSION];
+        double norm = 0;
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = (float) random.nextGaussian();
+            norm += vector[i] * vector[i];
+        }
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] /= (float) Math.sqrt(norm);
+        }
+        return Embedding.from(vector);
+    }
+
+    // Wires the service the way CDI would, with in-memory store and catalog file in the given directory
+    static DocumentProcessingService ingestionService(Path directory) {
+        EmbeddingModel embeddingModel = fakeEmbeddingModel();
+        InMemoryEmbeddingStore<TextSegment> store = new InMemoryEmbeddingStore<>();
+
+        EmbeddingPipeline pipeline = new EmbeddingPipeline();
+        pipeline.embeddingModel = embeddingModel;
+        pipeline.embeddingStore = store;
+        RagMetrics metrics = new RagMetrics(new SimpleMeterRegistry());
+        pipeline.metrics = metrics;
+        pipeline.concurrency = 4;
+        pipeline.batchSize = 32;
+        pipeline.start();
+
+        DocumentProcessingService service = new DocumentProcessingService();
+        service.embeddingModel = embeddingModel;
+        service.embeddingStore = store;
+        service.metrics = metrics;
+        service.lexicalIndex = new LexicalIndex(8.0, 1.5);
+        service.embeddingPipeline = pipeline;
+        service.answerCache = new SemanticAnswerCache(0.95, 500, Duration.ofMinutes(30), System::currentTimeMillis);
+        service.windowChars = 8192;
+        service.catalog = new DocumentCatalog(directory.resolve("document-catalog.jsonl"), objectMapper());
+        return service;
+    }
+
+    static ObjectMapper objectMapper() {
+        return new ObjectMapper().findAndRegisterModules();
+    }
+
+    private static List<String> wrap(String text, int width) {
+        List<String> lines = new ArrayList<>();
+        for (String paragraph : paragraphs(text)) {
+            StringBuilder line = new StringBuilder();
+            for (String word : paragraph.strip().split(" ")) {
+                if (line.length() + word.length() + 1 > width) {
+                    lines.add(line.toString());
+                    line.setLength(0);
+                }
+                if (!line.isEmpty()) {
+                    line.append(' ');
+                }
+                line.append(word);
+            }
+            lines.add(line.toString());
+            lines.add("");
+        }
+        return lines;
+    }
+}
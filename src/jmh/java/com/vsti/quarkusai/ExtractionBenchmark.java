@@ -0,0 +1,86 @@
+package com.vsti.quarkusai;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Full processDocument path per format: Tika extraction, chunking, hashing and the in-memory stand-ins
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExtractionBenchmark {
+
+    @Param({"txt", "pdf", "docx"})
+    String format;
+
+    @Param({"50000"})
+    int characters;
+
+    private byte[] content;
+    private String contentType;
+    private Path directory;
+    private DocumentProcessingService service;
+    private long uploads;
+
+    @Setup(Level.Trial)
+    public void createDocument() throws Exception {
+        String text = BenchmarkFixtures.text(characters, 42);
+        switch (format) {
+            case "pdf" -> {
+                content = BenchmarkFixtures.pdf(text);
+                contentType = "application/pdf";
+            }
+            case "docx" -> {
+                content = BenchmarkFixtures.docx(text);
+                contentType = "application/vnd.openxmlformats-officedocument.wordprocessingml.document";
+            }
+            default -> {
+                content = BenchmarkFixtures.txt(text);
+                contentType = "text/plain";
+            }
+        }
+    }
+
+    // A fresh service per iteration keeps the store from growing over the whole run
+    @Setup(Level.Iteration)
+    public void createService() throws Exception {
+        directory = Files.createTempDirectory("extraction-benchmark");
+        service = BenchmarkFixtures.ingestionService(directory);
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteService() throws Exception {
+        service.embeddingPipeline.stop();
+        service.catalog.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public DocumentMetadata processDocument() throws Exception {
+        // Unique filenames, so every invocation is a first upload rather than an unchanged re-upload
+        return service.processDocument("benchmark-" + uploads++ + "." + format, contentType,
+            new ByteArrayInputStream(content));
+    }
+}
@@ -0,0 +1,47 @@
+package com.vsti.quarkusai;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Prompt assembly and the context usage check that run on every chat request
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PromptBenchmark {
+
+    private final RagChatService service = new RagChatService();
+    private String question;
+    private String context;
+    private String answer;
+
+    @Setup
+    public void createInputs() {
+        question = "How is the retrieval context selected for a question?";
+        // Three segments of roughly 300 characters, as retrieve() joins them
+        context = String.join("\n\n", BenchmarkFixtures.paragraphs(BenchmarkFixtures.text(900, 3)));
+        answer = BenchmarkFixtures.text(1500, 11);
+    }
+
+    @Benchmark
+    public String buildPromptWithContext() {
+        return service.buildPromptWithContext(question, context);
+    }
+
+    @Benchmark
+    public boolean contextWasUsed() {
+        return service.contextWasUsed(answer, context);
+    }
+}
@@ -0,0 +1,55 @@
+package com.vsti.quarkusai;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// MMR re-ranking of one query's candidates, which is added to every chat request when enabled
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RerankBenchmark {
+
+    @Param({"20", "50"})
+    int candidates;
+
+    private final MmrReranker reranker = new MmrReranker(3, 0.7, 2);
+    private float[][] vectors;
+    private double[] relevance;
+    private String[] documentIds;
+
+    @Setup
+    public void createCandidates() {
+        // nomic-embed-text dimensions, a handful of documents
+        Random random = new Random(42);
+        vectors = new float[candidates][768];
+        relevance = new double[candidates];
+        documentIds = new String[candidates];
+        for (int i = 0; i < candidates; i++) {
+            for (int d = 0; d < 768; d++) {
+                vectors[i][d] = (float) random.nextGaussian();
+            }
+            relevance[i] = 0.9 - i * 0.005;
+            documentIds[i] = "doc-" + (i % 5);
+        }
+    }
+
+    @Benchmark
+    public int[] select() {
+        return reranker.select(vectors, relevance, documentIds);
+    }
+}
@@ -0,0 +1,76 @@
+package com.vsti.quarkusai;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+// Startup restore in DocumentProcessingService.initialize: catalog replay and registry indexing
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RestoreBenchmark {
+
+    @Param({"1000", "10000"})
+    int documents;
+
+    @Param({"20"})
+    int segmentsPerDocument;
+
+    private Path journal;
+
+    @Setup
+    public void writeCatalog() throws Exception {
+        journal = Files.createTempFile("restore-benchmark", ".jsonl");
+        Files.delete(journal);
+        DocumentCatalog catalog = new DocumentCatalog(journal, BenchmarkFixtures.objectMapper());
+        for (int i = 0; i < documents; i++) {
+            DocumentMetadata metadata = DocumentMetadata.create(UUID.randomUUID().toString(), "document-" + i + ".pdf",
+                    "application/pdf", 100_000)
+                .withChunkCount(segmentsPerDocument)
+                .withContentHash(UUID.randomUUID().toString());
+            List<String> segmentIds = IntStream.range(0, segmentsPerDocument)
+                .mapToObj(segment -> UUID.randomUUID().toString())
+                .toList();
+            Map<String, String> chunkHashes = new HashMap<>();
+            segmentIds.forEach(segmentId -> chunkHashes.put(segmentId, UUID.randomUUID().toString()));
+            catalog.put(metadata, segmentIds, chunkHashes);
+        }
+        catalog.close();
+    }
+
+    @TearDown
+    public void deleteCatalog() throws Exception {
+        Files.deleteIfExists(journal);
+    }
+
+    @Benchmark
+    public int initialize() {
+        DocumentProcessingService service = new DocumentProcessingService();
+        service.catalog = new DocumentCatalog(journal, BenchmarkFixtures.objectMapper());
+        // Disabled, loading it would scroll Qdrant
+        service.lexicalIndex = new LexicalIndex();
+        service.initialize();
+        return service.registry.size();
+    }
+}
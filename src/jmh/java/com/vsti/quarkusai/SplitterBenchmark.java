@@ -0,0 +1,55 @@
+package com.vsti.quarkusai;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.segment.TextSegment;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// The recursive splitter used for ingestion, on the whole text and through the windowed StreamingChunker
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SplitterBenchmark {
+
+    @Param({"10000", "200000"})
+    int characters;
+
+    private final DocumentSplitter splitter = DocumentSplitters.recursive(300, 50);
+    private String text;
+
+    @Setup
+    public void createText() {
+        text = BenchmarkFixtures.text(characters, 7);
+    }
+
+    @Benchmark
+    public List<TextSegment> recursiveSplitter() {
+        return splitter.split(Document.from(text));
+    }
+
+    @Benchmark
+    public int streamingChunker(Blackhole blackhole) {
+        StreamingChunker chunker = new StreamingChunker(splitter, 8192, 50, 32, blackhole::consume);
+        chunker.append(text);
+        chunker.finish();
+        return chunker.segmentCount();
+    }
+}
@@ -0,0 +1,117 @@
+package com.vsti.quarkusai;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+// Limits concurrent calls to a backend. Callers beyond the limit wait in a bounded queue up to a
+// deadline; when the queue is full or the deadline passes they are rejected straight away so
+// they can be answered with 429 instead of holding a thread until the backend times out.
+public class Bulkhead {
+
+    private final String name;
+    private final int limit;
+    private final int queueCapacity;
+    private final Duration maxWait;
+    private final Consumer<String> onRejected;
+    private final Semaphore permits;
+    private final AtomicInteger waiting = new AtomicInteger();
+    // Moving average of how long a permit is held, used for the Retry-After estimate
+    private volatile double averageHoldMillis = 1000;
+
+    public Bulkhead(String name, int limit, int queueCapacity, Duration maxWait, Consumer<String> onRejected) {
+        this.name = name;
+        this.limit = limit;
+        this.queueCapacity = queueCapacity;
+        this.maxWait = maxWait;
+        this.onRejected = onRejected;
+        this.permits = new Semaphore(limit, true);
+    }
+
+    public Permit acquire() {
+        try {
+            // The timed variant respects fairness, so queued callers are not overtaken
+            if (permits.tryAcquire(0, TimeUnit.MILLISECONDS)) {
+                return new Permit();
+            }
+            if (waiting.incrementAndGet() > queueCapacity) {
+                waiting.decrementAndGet();
+                throw rejected("queue full");
+            }
+            try {
+                if (!permits.tryAcquire(maxWait.toMillis(), TimeUnit.MILLISECONDS)) {
+                    throw rejected("timeout");
+                }
+                return new Permit();
+            } finally {
+                waiting.decrementAndGet();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw rejected("interrupted");
+        }
+    }
+
+    public <T> T call(Supplier<T> action) {
+        try (Permit permit = acquire()) {
+            return action.get();
+        }
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public int active() {
+        return limit - permits.availablePermits();
+    }
+
+    public int waiting() {
+        return waiting.get();
+    }
+
+    // Time for the calls ahead in the queue to get through, at least one second
+    public int retryAfterSeconds() {
+        double seconds = averageHoldMillis * (waiting.get() + 1) / limit / 1000;
+        return (int) Math.max(1, Math.ceil(seconds));
+    }
+
+    private RejectedException rejected(String reason) {
+        onRejected.accept(reason);
+        return new RejectedException(name + " is busy (" + reason + "), try again later", retryAfterSeconds());
+    }
+
+    public class Permit implements AutoCloseable {
+
+        private final long acquiredAt = System.nanoTime();
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        // Safe to call more than once, only the first call releases
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                double heldMillis = (System.nanoTime() - acquiredAt) / 1_000_000.0;
+                averageHoldMillis = 0.8 * averageHoldMillis + 0.2 * heldMillis;
+                permits.release();
+            }
+        }
+    }
+
+    public static class RejectedException extends RuntimeException {
+
+        private final int retryAfterSeconds;
+
+        public RejectedException(String message, int retryAfterSeconds) {
+            super(message);
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        public int retryAfterSeconds() {
+            return retryAfterSeconds;
+        }
+    }
+}
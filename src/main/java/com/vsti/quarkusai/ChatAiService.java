@@ -3,7 +3,8 @@ package com.vsti.quarkusai;
 import dev.langchain4j.service.UserMessage;
 import io.quarkiverse.langchain4j.RegisterAiService;
 
-@RegisterAiService
+// Stateless, conversations go through ConversationAiService
+@RegisterAiService(chatMemoryProviderSupplier = RegisterAiService.NoChatMemoryProviderSupplier.class)
 public interface ChatAiService {
 
     String chat(@UserMessage String message);
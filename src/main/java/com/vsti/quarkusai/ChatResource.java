@@ -1,15 +1,20 @@
 package com.vsti.quarkusai;
 
-import dev.langchain4j.service.TokenStream;
 import io.quarkus.qute.Template;
+import io.smallrye.common.annotation.NonBlocking;
+import io.smallrye.mutiny.Uni;
+import io.vertx.core.Vertx;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.sse.Sse;
 import jakarta.ws.rs.sse.SseEventSink;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.resteasy.reactive.server.ServerExceptionMapper;
 
-import java.util.List;
+import java.time.Duration;
 
 @Path("/")
 public class ChatResource {
@@ -21,10 +26,17 @@ public class ChatResource {
     Template message;
 
     @Inject
-    ChatAiService aiService;
+    ReactiveRagChatService ragChatService;
 
+    // Heartbeats run as Vert.x timers on the event loop, they go away with the application
     @Inject
-    RagChatService ragChatService;
+    Vertx vertx;
+
+    @ConfigProperty(name = "chat.stream.heartbeat-interval", defaultValue = "PT15S")
+    Duration heartbeatInterval;
+
+    @ConfigProperty(name = "chat.stream.idle-timeout", defaultValue = "PT90S")
+    Duration idleTimeout;
 
     @GET
     @Produces(MediaType.TEXT_HTML)
@@ -32,50 +44,54 @@ public class ChatResource {
         return chat.instance().render();
     }
 
+    // Chat requests mostly wait for Ollama, the reactive pipeline serves them from the event loop
     @POST
     @Path("/chat")
     @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
     @Produces(MediaType.TEXT_HTML)
-    public String sendMessage(@FormParam("message") String userMessage) {
-        RagChatService.ChatResponse response = ragChatService.chat(userMessage);
-        return message.data("userMessage", userMessage)
-                     .data("botResponse", response.response())
-                     .data("sources", response.sources())
-                     .render();
+    public Uni<String> sendMessage(@FormParam("message") String userMessage, @FormParam("session") String session) {
+        return ragChatService.chat(sessionId(session), userMessage)
+            .map(response -> message.data("userMessage", userMessage)
+                .data("botResponse", response.response())
+                .data("sources", response.sources())
+                .render());
     }
 
     @GET
     @Path("/chat/stream")
     @Produces(MediaType.SERVER_SENT_EVENTS)
-    public void streamMessage(@QueryParam("message") String userMessage, @Context SseEventSink eventSink, @Context Sse sse) {
+    @NonBlocking
+    public void streamMessage(@QueryParam("message") String userMessage, @QueryParam("session") String session,
+                              @Context SseEventSink eventSink, @Context Sse sse) {
         if (userMessage == null || userMessage.trim().isEmpty()) {
             eventSink.send(sse.newEvent("error", "Message is required"));
             eventSink.close();
             return;
         }
         
+        SseChatStream stream = new SseChatStream(eventSink, sse, vertx, heartbeatInterval, idleTimeout);
         try {
-            // Use RAG service for streaming to include document context
-            RagChatService.ChatResponse ragResponse = ragChatService.chat(userMessage);
-            String response = ragResponse.response();
-            String[] words = response.split(" ");
-            
-            for (String word : words) {
-                eventSink.send(sse.newEvent("token", word + " "));
-                Thread.sleep(100); // Simulate streaming delay
-            }
-            
-            // Send sources if available
-            if (!ragResponse.sources().isEmpty()) {
-                String sourcesJson = String.join(",", ragResponse.sources());
-                eventSink.send(sse.newEvent("sources", sourcesJson));
-            }
-            
-            eventSink.send(sse.newEvent("complete", ""));
-            eventSink.close();
+            // Forward tokens to the client as the model produces them, a disconnect cancels the generation
+            stream.attach(ragChatService.chatStream(sessionId(session), userMessage, stream));
         } catch (Exception e) {
-            eventSink.send(sse.newEvent("error", "Failed to stream: " + e.getMessage()));
-            eventSink.close();
+            stream.onError(e);
+        }
+    }
+
+    @ServerExceptionMapper
+    public Response mapRejection(Bulkhead.RejectedException e) {
+        return Response.status(Response.Status.TOO_MANY_REQUESTS)
+            .header("Retry-After", String.valueOf(e.retryAfterSeconds()))
+            .type(MediaType.TEXT_PLAIN)
+            .entity(e.getMessage())
+            .build();
+    }
+
+    // Chosen by the page, requests without one are answered without conversation memory
+    private static String sessionId(String session) {
+        if (session == null || session.isBlank() || session.length() > 64) {
+            return null;
         }
+        return session;
     }
 }
@@ -0,0 +1,163 @@
+package com.vsti.quarkusai;
+
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.segment.TextSegment;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+// Chooses how extracted text is cut into chunks, per content type. Recursive is the original
+// character based splitter; word and sentence pack words or whole sentences up to a token budget;
+// section additionally starts a new chunk at every heading of Tika's XHTML output. Chunk counts
+// and sizes are tallied per strategy. Token counts are ContextAssembler.estimateTokens estimates,
+// Ollama exposes no tokenizer for the embedding model, so budgets are approximate.
+@ApplicationScoped
+public class ChunkingService {
+
+    public enum Strategy { RECURSIVE, WORD, SENTENCE, SECTION }
+
+    @Inject
+    RagMetrics metrics;
+
+    @ConfigProperty(name = "ingestion.chunking.default", defaultValue = "sentence")
+    Strategy defaultStrategy;
+
+    // Entries like text/html=section, text/* matches every subtype without an entry of its own
+    @ConfigProperty(name = "ingestion.chunking.content-types")
+    Optional<List<String>> contentTypes;
+
+    @ConfigProperty(name = "ingestion.chunking.max-tokens", defaultValue = "256")
+    int maxTokens;
+
+    @ConfigProperty(name = "ingestion.chunking.overlap-tokens", defaultValue = "32")
+    int overlapTokens;
+
+    @ConfigProperty(name = "ingestion.chunking.recursive.max-chars", defaultValue = "300")
+    int recursiveMaxChars;
+
+    @ConfigProperty(name = "ingestion.chunking.recursive.overlap-chars", defaultValue = "50")
+    int recursiveOverlapChars;
+
+    private final Map<String, Strategy> byContentType = new HashMap<>();
+    private final Map<Strategy, Tally> tallies = new EnumMap<>(Strategy.class);
+
+    public ChunkingService() {
+    }
+
+    ChunkingService(Strategy defaultStrategy, List<String> contentTypes, int maxTokens, int overlapTokens) {
+        this.defaultStrategy = defaultStrategy;
+        this.contentTypes = Optional.of(contentTypes);
+        this.maxTokens = maxTokens;
+        this.overlapTokens = overlapTokens;
+        this.recursiveMaxChars = 300;
+        this.recursiveOverlapChars = 50;
+        initialize();
+    }
+
+    @PostConstruct
+    void initialize() {
+        for (String entry : contentTypes.orElse(List.of())) {
+            int separator = entry.lastIndexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Expected content-type=strategy but got " + entry);
+            }
+            byContentType.put(entry.substring(0, separator).trim().toLowerCase(Locale.ROOT),
+                Strategy.valueOf(entry.substring(separator + 1).trim().toUpperCase(Locale.ROOT)));
+        }
+        for (Strategy strategy : Strategy.values()) {
+            tallies.put(strategy, new Tally());
+        }
+    }
+
+    public Strategy strategyFor(String contentType) {
+        if (contentType == null || contentType.isBlank()) {
+            return defaultStrategy;
+        }
+        // Parameters like the charset don't change the structure
+        String type = contentType.split(";", 2)[0].trim().toLowerCase(Locale.ROOT);
+        Strategy strategy = byContentType.get(type);
+        int slash = type.indexOf('/');
+        if (strategy == null && slash > 0) {
+            strategy = byContentType.get(type.substring(0, slash) + "/*");
+        }
+        return strategy != null ? strategy : defaultStrategy;
+    }
+
+    public DocumentSplitter splitter(Strategy strategy) {
+        return switch (strategy) {
+            case RECURSIVE -> DocumentSplitters.recursive(recursiveMaxChars, recursiveOverlapChars);
+            case WORD -> new PackingSplitter(PackingSplitter.Unit.WORD, maxTokens, overlapTokens);
+            case SENTENCE, SECTION -> new PackingSplitter(PackingSplitter.Unit.SENTENCE, maxTokens, overlapTokens);
+        };
+    }
+
+    // Carried over between extraction windows too, so chunks at a window boundary overlap like the others
+    public int overlapChars(Strategy strategy) {
+        return strategy == Strategy.RECURSIVE ? recursiveOverlapChars : overlapTokens * 4;
+    }
+
+    public boolean sectionAware(Strategy strategy) {
+        return strategy == Strategy.SECTION;
+    }
+
+    public void chunked(Strategy strategy, List<TextSegment> segments) {
+        for (TextSegment segment : segments) {
+            int tokens = ContextAssembler.estimateTokens(segment.text());
+            tallies.get(strategy).chunk(tokens);
+            if (metrics != null) {
+                metrics.chunkTokens(strategy, tokens);
+            }
+        }
+    }
+
+    public void documentChunked(Strategy strategy) {
+        tallies.get(strategy).document();
+    }
+
+    public List<Stats> stats() {
+        List<Stats> stats = new ArrayList<>();
+        tallies.forEach((strategy, tally) -> stats.add(tally.stats(strategy)));
+        return stats;
+    }
+
+    private static final class Tally {
+
+        private long documents;
+        private long chunks;
+        private long tokens;
+        private int minTokens = Integer.MAX_VALUE;
+        private int maxTokens;
+
+        synchronized void chunk(int chunkTokens) {
+            chunks++;
+            tokens += chunkTokens;
+            minTokens = Math.min(minTokens, chunkTokens);
+            maxTokens = Math.max(maxTokens, chunkTokens);
+        }
+
+        synchronized void document() {
+            documents++;
+        }
+
+        synchronized Stats stats(Strategy strategy) {
+            return new Stats(strategy, documents, chunks,
+                documents == 0 ? 0 : (double) chunks / documents,
+                chunks == 0 ? 0 : (double) tokens / chunks,
+                chunks == 0 ? 0 : minTokens, maxTokens);
+        }
+    }
+
+    // Token counts are estimates, see ContextAssembler.estimateTokens; the distribution is rag.ingestion.chunk.tokens
+    public record Stats(Strategy strategy, long documents, long chunks, double chunksPerDocument,
+                        double averageTokens, int minTokens, int maxTokens) {}
+}
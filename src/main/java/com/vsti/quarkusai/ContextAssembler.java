@@ -0,0 +1,149 @@
+package com.vsti.quarkusai;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+// Turns ranked chunks into the prompt context. Neighbouring chunks of a document repeat the
+// splitter overlap, so chunks whose end and start overlap are merged, duplicates and chunks
+// contained in another are dropped, and the rest is packed in rank order up to a token budget.
+@ApplicationScoped
+public class ContextAssembler {
+
+    private static final String SEPARATOR = "\n\n";
+
+    @ConfigProperty(name = "rag.context.max-tokens", defaultValue = "1024")
+    int maxTokens;
+
+    @ConfigProperty(name = "rag.context.min-overlap", defaultValue = "20")
+    int minOverlap;
+
+    public ContextAssembler() {
+    }
+
+    ContextAssembler(int maxTokens, int minOverlap) {
+        this.maxTokens = maxTokens;
+        this.minOverlap = minOverlap;
+    }
+
+    public Assembly assemble(List<Chunk> ranked) {
+        int naiveTokens = ranked.stream().mapToInt(chunk -> estimateTokens(chunk.text().strip())).sum()
+            + Math.max(0, ranked.size() - 1) * estimateTokens(SEPARATOR);
+
+        // Pieces keep the rank of their best chunk, merging never moves text further down
+        List<Chunk> pieces = new ArrayList<>();
+        for (Chunk chunk : ranked) {
+            String text = chunk.text().strip();
+            if (text.isEmpty()) {
+                continue;
+            }
+            add(pieces, new Chunk(text, chunk.filename(), chunk.documentId()));
+        }
+
+        List<Chunk> included = new ArrayList<>();
+        StringBuilder context = new StringBuilder();
+        int tokens = 0;
+        for (Chunk piece : pieces) {
+            int separatorTokens = context.isEmpty() ? 0 : estimateTokens(SEPARATOR);
+            int pieceTokens = estimateTokens(piece.text());
+            if (tokens + separatorTokens + pieceTokens <= maxTokens) {
+                if (!context.isEmpty()) {
+                    context.append(SEPARATOR);
+                }
+                context.append(piece.text());
+                tokens += separatorTokens + pieceTokens;
+                included.add(piece);
+            } else if (included.isEmpty()) {
+                // The best piece alone is over budget, keep its beginning rather than nothing
+                Chunk truncated = new Chunk(truncate(piece.text(), maxTokens), piece.filename(), piece.documentId());
+                context.append(truncated.text());
+                tokens = estimateTokens(truncated.text());
+                included.add(truncated);
+            }
+            // Otherwise try the following, possibly shorter, pieces
+        }
+        return new Assembly(context.toString(), included, tokens, naiveTokens);
+    }
+
+    // Llama tokenizers average about four characters per token for English and German prose
+    static int estimateTokens(String text) {
+        return (text.length() + 3) / 4;
+    }
+
+    private void add(List<Chunk> pieces, Chunk chunk) {
+        Chunk merged = chunk;
+        int position = -1;
+        for (int i = 0; i < pieces.size(); i++) {
+            Chunk combined = combine(pieces.get(i), merged);
+            if (combined == null) {
+                continue;
+            }
+            if (position < 0) {
+                pieces.set(i, combined);
+                position = i;
+            } else {
+                // The merged piece keeps the better rank, the absorbed one is removed
+                pieces.set(position, combined);
+                pieces.remove(i--);
+            }
+            merged = combined;
+        }
+        if (position < 0) {
+            pieces.add(chunk);
+        }
+    }
+
+    // Joins two chunks when one contains the other or their texts overlap, null if they are unrelated
+    private Chunk combine(Chunk first, Chunk second) {
+        if (first.text().contains(second.text())) {
+            return first;
+        }
+        if (second.text().contains(first.text())) {
+            return second;
+        }
+        if (!Objects.equals(first.documentId(), second.documentId())) {
+            return null;
+        }
+        int overlap = overlap(first.text(), second.text());
+        if (overlap >= minOverlap) {
+            return new Chunk(first.text() + second.text().substring(overlap), first.filename(), first.documentId());
+        }
+        overlap = overlap(second.text(), first.text());
+        if (overlap >= minOverlap) {
+            return new Chunk(second.text() + first.text().substring(overlap), first.filename(), first.documentId());
+        }
+        return null;
+    }
+
+    // Length of the longest suffix of the first text that is a prefix of the second
+    static int overlap(String first, String second) {
+        for (int length = Math.min(first.length(), second.length()); length > 0; length--) {
+            if (first.regionMatches(first.length() - length, second, 0, length)) {
+                return length;
+            }
+        }
+        return 0;
+    }
+
+    private static String truncate(String text, int tokens) {
+        int maxChars = tokens * 4;
+        if (text.length() <= maxChars) {
+            return text;
+        }
+        int cut = text.lastIndexOf(' ', maxChars);
+        return text.substring(0, cut > 0 ? cut : maxChars);
+    }
+
+    public record Chunk(String text, String filename, String documentId) {}
+
+    // Naive tokens are what joining every chunk as it came would have cost
+    public record Assembly(String context, List<Chunk> chunks, int tokens, int naiveTokens) {
+
+        public int savedTokens() {
+            return naiveTokens - tokens;
+        }
+    }
+}
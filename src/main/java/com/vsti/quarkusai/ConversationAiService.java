@@ -0,0 +1,16 @@
+package com.vsti.quarkusai;
+
+import dev.langchain4j.service.MemoryId;
+import dev.langchain4j.service.UserMessage;
+import io.quarkiverse.langchain4j.RegisterAiService;
+import io.smallrye.mutiny.Multi;
+import jakarta.enterprise.context.ApplicationScoped;
+
+// Generation with the earlier turns of a chat session, kept in ConversationMemoryStore. Application
+// scoped, a request scoped AI service would clear the memory it used at the end of every request.
+@ApplicationScoped
+@RegisterAiService
+public interface ConversationAiService {
+
+    Multi<String> tokens(@MemoryId String sessionId, @UserMessage String message);
+}
@@ -0,0 +1,223 @@
+package com.vsti.quarkusai;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+// Chat memory of the conversation AI service, one session per memory id. Every session is
+// compacted to a token budget when it is updated, sessions idle for too long or least recently
+// used beyond the session and total token caps are evicted.
+@ApplicationScoped
+public class ConversationMemoryStore implements ChatMemoryStore {
+
+    @Inject
+    RagMetrics metrics;
+
+    @ConfigProperty(name = "rag.memory.max-session-tokens", defaultValue = "1024")
+    int maxSessionTokens;
+
+    @ConfigProperty(name = "rag.memory.max-total-tokens", defaultValue = "2000000")
+    long maxTotalTokens;
+
+    @ConfigProperty(name = "rag.memory.max-sessions", defaultValue = "5000")
+    int maxSessions;
+
+    @ConfigProperty(name = "rag.memory.idle-timeout", defaultValue = "PT30M")
+    Duration idleTimeout;
+
+    // Older answers are cut to this length before whole turns are dropped
+    @ConfigProperty(name = "rag.memory.compacted-answer-chars", defaultValue = "300")
+    int compactedAnswerChars;
+
+    private final LongSupplier clock;
+    private final LinkedHashMap<Object, Session> sessions = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalTokens;
+    private long compactions;
+    private long evictions;
+
+    public ConversationMemoryStore() {
+        this.clock = System::currentTimeMillis;
+    }
+
+    ConversationMemoryStore(int maxSessionTokens, long maxTotalTokens, int maxSessions, Duration idleTimeout,
+                            int compactedAnswerChars, LongSupplier clock) {
+        this.maxSessionTokens = maxSessionTokens;
+        this.maxTotalTokens = maxTotalTokens;
+        this.maxSessions = maxSessions;
+        this.idleTimeout = idleTimeout;
+        this.compactedAnswerChars = compactedAnswerChars;
+        this.clock = clock;
+    }
+
+    @PostConstruct
+    void registerMetrics() {
+        metrics.chatMemory(this);
+    }
+
+    @Override
+    public synchronized List<ChatMessage> getMessages(Object memoryId) {
+        Session session = activeSession(memoryId);
+        if (session == null) {
+            return List.of();
+        }
+        sessions.put(memoryId, new Session(session.messages(), session.tokens(), session.characters(), clock.getAsLong()));
+        return session.messages();
+    }
+
+    @Override
+    public synchronized void updateMessages(Object memoryId, List<ChatMessage> messages) {
+        long now = clock.getAsLong();
+        List<ChatMessage> compacted = compact(messages);
+        int tokens = 0;
+        long characters = 0;
+        for (ChatMessage message : compacted) {
+            tokens += ContextAssembler.estimateTokens(text(message));
+            characters += text(message).length();
+        }
+        Session previous = sessions.put(memoryId, new Session(List.copyOf(compacted), tokens, characters, now));
+        totalTokens += tokens - (previous == null ? 0 : previous.tokens());
+        evict(now);
+    }
+
+    @Override
+    public synchronized void deleteMessages(Object memoryId) {
+        Session removed = sessions.remove(memoryId);
+        if (removed != null) {
+            totalTokens -= removed.tokens();
+        }
+    }
+
+    public synchronized boolean hasHistory(Object memoryId) {
+        Session session = activeSession(memoryId);
+        return session != null && !session.messages().isEmpty();
+    }
+
+    // Records a turn that was answered without the conversation AI service, e.g. from the answer cache
+    public synchronized void remember(Object memoryId, String question, String answer) {
+        Session session = activeSession(memoryId);
+        List<ChatMessage> messages = new ArrayList<>(session == null ? List.of() : session.messages());
+        messages.add(UserMessage.from(question));
+        messages.add(AiMessage.from(answer));
+        updateMessages(memoryId, messages);
+    }
+
+    public synchronized Stats stats() {
+        int messages = 0;
+        long characters = 0;
+        for (Session session : sessions.values()) {
+            messages += session.messages().size();
+            characters += session.characters();
+        }
+        return new Stats(sessions.size(), maxSessions, messages, totalTokens, maxTotalTokens, characters, compactions, evictions);
+    }
+
+    // The newest message is kept as it is. Older questions lose the retrieved context they were
+    // sent with, then older answers are shortened and finally the oldest turns dropped until the
+    // session fits its budget.
+    List<ChatMessage> compact(List<ChatMessage> messages) {
+        List<ChatMessage> compacted = new ArrayList<>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            ChatMessage message = messages.get(i);
+            if (i < messages.size() - 1 && message instanceof UserMessage user && user.hasSingleText()) {
+                String question = RagChatService.questionOf(user.singleText());
+                if (!question.equals(user.singleText())) {
+                    message = UserMessage.from(question);
+                }
+            }
+            compacted.add(message);
+        }
+
+        int tokens = compacted.stream().mapToInt(message -> ContextAssembler.estimateTokens(text(message))).sum();
+        for (int i = 0; i < compacted.size() - 1 && tokens > maxSessionTokens; i++) {
+            if (compacted.get(i) instanceof AiMessage answer && text(answer).length() > compactedAnswerChars) {
+                String shortened = shorten(text(answer));
+                tokens -= ContextAssembler.estimateTokens(text(answer)) - ContextAssembler.estimateTokens(shortened);
+                compacted.set(i, AiMessage.from(shortened));
+                compactions++;
+            }
+        }
+
+        // A conversation starts with a question, an answer left at the start goes along with it
+        int first = firstNonSystem(compacted);
+        while (tokens > maxSessionTokens && first < compacted.size() - 1) {
+            tokens -= ContextAssembler.estimateTokens(text(compacted.remove(first)));
+            while (first < compacted.size() - 1 && compacted.get(first) instanceof AiMessage) {
+                tokens -= ContextAssembler.estimateTokens(text(compacted.remove(first)));
+            }
+            compactions++;
+        }
+        return compacted;
+    }
+
+    private Session activeSession(Object memoryId) {
+        Session session = sessions.get(memoryId);
+        if (session != null && clock.getAsLong() - session.lastUsed() >= idleTimeout.toMillis()) {
+            sessions.remove(memoryId);
+            totalTokens -= session.tokens();
+            evictions++;
+            return null;
+        }
+        return session;
+    }
+
+    // Least recently used first, the iteration stops at the first session that may stay
+    private void evict(long now) {
+        Iterator<Map.Entry<Object, Session>> iterator = sessions.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Session session = iterator.next().getValue();
+            boolean idle = now - session.lastUsed() >= idleTimeout.toMillis();
+            if (!idle && sessions.size() <= maxSessions && totalTokens <= maxTotalTokens) {
+                break;
+            }
+            iterator.remove();
+            totalTokens -= session.tokens();
+            evictions++;
+        }
+    }
+
+    private String shorten(String text) {
+        int cut = text.lastIndexOf(' ', compactedAnswerChars);
+        return text.substring(0, cut > 0 ? cut : compactedAnswerChars) + " ...";
+    }
+
+    private static int firstNonSystem(List<ChatMessage> messages) {
+        int index = 0;
+        while (index < messages.size() && messages.get(index) instanceof SystemMessage) {
+            index++;
+        }
+        return index;
+    }
+
+    static String text(ChatMessage message) {
+        if (message instanceof UserMessage user) {
+            return user.hasSingleText() ? user.singleText() : "";
+        }
+        if (message instanceof AiMessage answer) {
+            return answer.text() == null ? "" : answer.text();
+        }
+        if (message instanceof SystemMessage system) {
+            return system.text();
+        }
+        return "";
+    }
+
+    private record Session(List<ChatMessage> messages, int tokens, long characters, long lastUsed) {}
+
+    // Characters are what the messages hold on the heap, at one or two bytes each
+    public record Stats(int sessions, int maxSessions, int messages, long tokens, long maxTotalTokens, long characters,
+                        long compactions, long evictions) {}
+}
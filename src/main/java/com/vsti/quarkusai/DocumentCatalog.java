@@ -0,0 +1,230 @@
+package com.vsti.quarkusai;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.quarkus.runtime.annotations.RegisterForReflection;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// File-backed catalog of documents and their segment ids. Every change is appended to a
+// JSON lines journal, which is replayed at startup and compacted in the background once it is
+// mostly history.
+@ApplicationScoped
+@RegisterForReflection(targets = {DocumentCatalog.Entry.class, DocumentCatalog.Record.class})
+public class DocumentCatalog {
+
+    @Inject
+    ObjectMapper objectMapper;
+
+    @ConfigProperty(name = "catalog.path", defaultValue = "data/document-catalog.jsonl")
+    String location;
+
+    private Path path;
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private BufferedWriter writer;
+    private int journalLines;
+    private boolean loaded;
+    private boolean existed;
+    // Set while a compaction runs, records appended meanwhile are carried over into the compacted journal
+    private Thread compaction;
+    private List<Record> appendedDuringCompaction;
+
+    public DocumentCatalog() {
+    }
+
+    DocumentCatalog(Path path, ObjectMapper objectMapper) {
+        this.path = path;
+        this.objectMapper = objectMapper;
+    }
+
+    @PostConstruct
+    void init() {
+        path = Path.of(location);
+    }
+
+    public synchronized List<Entry> load() {
+        if (!loaded) {
+            replayJournal();
+            loaded = true;
+        }
+        return List.copyOf(entries.values());
+    }
+
+    // False when there was no journal yet, e.g. on the first start after an upgrade
+    public synchronized boolean existed() {
+        load();
+        return existed;
+    }
+
+    public synchronized void put(DocumentMetadata document, List<String> segmentIds, Map<String, String> chunkHashes) {
+        load();
+        Entry entry = new Entry(document, List.copyOf(segmentIds), Map.copyOf(chunkHashes));
+        entries.put(document.id(), entry);
+        append(new Record(Record.PUT, document.id(), entry));
+    }
+
+    public synchronized void remove(String documentId) {
+        removeAll(List.of(documentId));
+    }
+
+    public synchronized void removeAll(Collection<String> documentIds) {
+        load();
+        for (String documentId : documentIds) {
+            if (entries.remove(documentId) != null) {
+                append(new Record(Record.DELETE, documentId, null));
+            }
+        }
+    }
+
+    public synchronized int size() {
+        load();
+        return entries.size();
+    }
+
+    // Waits for a running compaction, so the journal on disk is complete afterwards
+    @PreDestroy
+    void close() {
+        Thread running;
+        synchronized (this) {
+            running = compaction;
+        }
+        if (running != null) {
+            try {
+                running.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            closeWriter();
+        }
+    }
+
+    private void closeWriter() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                System.out.println("Could not close document catalog: " + e.getMessage());
+            }
+            writer = null;
+        }
+    }
+
+    private void replayJournal() {
+        if (!Files.exists(path)) {
+            return;
+        }
+        existed = true;
+
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                journalLines++;
+                try {
+                    Record record = objectMapper.readValue(line, Record.class);
+                    if (Record.PUT.equals(record.op())) {
+                        entries.put(record.documentId(), record.entry());
+                    } else {
+                        entries.remove(record.documentId());
+                    }
+                } catch (IOException e) {
+                    // A crash while appending can leave a truncated last line behind
+                    System.out.println("Skipping unreadable catalog record: " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read document catalog " + path, e);
+        }
+    }
+
+    private void append(Record record) {
+        try {
+            if (writer == null) {
+                if (path.getParent() != null) {
+                    Files.createDirectories(path.getParent());
+                }
+                writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            writer.write(objectMapper.writeValueAsString(record));
+            writer.newLine();
+            writer.flush();
+            journalLines++;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write document catalog " + path, e);
+        }
+        if (appendedDuringCompaction != null) {
+            appendedDuringCompaction.add(record);
+        } else if (journalLines > 2 * entries.size() + 100) {
+            List<Entry> snapshot = List.copyOf(entries.values());
+            appendedDuringCompaction = new ArrayList<>();
+            compaction = Thread.ofPlatform().daemon().name("catalog-compaction").start(() -> compact(snapshot));
+        }
+    }
+
+    // Writing the snapshot happens without holding the catalog, ingestions and deletes only wait
+    // for the few records appended meanwhile to be copied and the file to be swapped
+    private void compact(List<Entry> snapshot) {
+        Path compacted = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            try (BufferedWriter out = Files.newBufferedWriter(compacted, StandardCharsets.UTF_8)) {
+                for (Entry entry : snapshot) {
+                    out.write(objectMapper.writeValueAsString(new Record(Record.PUT, entry.document().id(), entry)));
+                    out.newLine();
+                }
+            }
+            synchronized (this) {
+                try (BufferedWriter out = Files.newBufferedWriter(compacted, StandardCharsets.UTF_8, StandardOpenOption.APPEND)) {
+                    for (Record record : appendedDuringCompaction) {
+                        out.write(objectMapper.writeValueAsString(record));
+                        out.newLine();
+                    }
+                }
+                closeWriter();
+                Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                journalLines = snapshot.size() + appendedDuringCompaction.size();
+            }
+        } catch (IOException e) {
+            // The journal itself is complete, it is compacted on a later attempt
+            System.out.println("Could not compact document catalog: " + e.getMessage());
+            try {
+                Files.deleteIfExists(compacted);
+            } catch (IOException ignored) {
+                // Overwritten by the next compaction
+            }
+        } finally {
+            synchronized (this) {
+                appendedDuringCompaction = null;
+                compaction = null;
+            }
+        }
+    }
+
+    public record Entry(DocumentMetadata document, List<String> segmentIds, Map<String, String> chunkHashes) {}
+
+    record Record(String op, String documentId, Entry entry) {
+        static final String PUT = "put";
+        static final String DELETE = "delete";
+    }
+}
@@ -8,13 +8,18 @@ public record DocumentMetadata(
     String contentType,
     long size,
     LocalDateTime uploadedAt,
-    int chunkCount
+    int chunkCount,
+    String contentHash
 ) {
     public static DocumentMetadata create(String id, String filename, String contentType, long size) {
-        return new DocumentMetadata(id, filename, contentType, size, LocalDateTime.now(), 0);
+        return new DocumentMetadata(id, filename, contentType, size, LocalDateTime.now(), 0, null);
     }
     
     public DocumentMetadata withChunkCount(int chunkCount) {
-        return new DocumentMetadata(id, filename, contentType, size, uploadedAt, chunkCount);
+        return new DocumentMetadata(id, filename, contentType, size, uploadedAt, chunkCount, contentHash);
+    }
+    
+    public DocumentMetadata withContentHash(String contentHash) {
+        return new DocumentMetadata(id, filename, contentType, size, uploadedAt, chunkCount, contentHash);
     }
 }
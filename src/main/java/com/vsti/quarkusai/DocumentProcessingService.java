@@ -1,27 +1,43 @@
 package com.vsti.quarkusai;
 
-import dev.langchain4j.data.document.Document;
 import dev.langchain4j.data.document.DocumentSplitter;
-import dev.langchain4j.data.document.splitter.DocumentSplitters;
-import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.document.Metadata;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.embedding.EmbeddingModel;
-import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
 import dev.langchain4j.store.embedding.EmbeddingStore;
+import io.micrometer.core.instrument.Timer;
 import jakarta.annotation.PostConstruct;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import org.apache.tika.Tika;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.ArrayList;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 
 @ApplicationScoped
 public class DocumentProcessingService {
@@ -30,87 +46,353 @@ public class DocumentProcessingService {
     EmbeddingModel embeddingModel;
 
     @Inject
+    @Replicated
     EmbeddingStore<TextSegment> embeddingStore;
 
+    @Inject
+    SemanticAnswerCache answerCache;
+
+    @Inject
+    EmbeddingPipeline embeddingPipeline;
+
+    @Inject
+    DocumentCatalog catalog;
+
+    @Inject
+    QdrantCollectionScroller scroller;
+
+    @Inject
+    RagMetrics metrics;
+
+    @Inject
+    LexicalIndex lexicalIndex;
+
+    @Inject
+    ChunkingService chunking;
+
     private final Tika tika = new Tika();
-    private final DocumentSplitter splitter = DocumentSplitters.recursive(300, 50);
-    private final ConcurrentMap<String, DocumentMetadata> documents = new ConcurrentHashMap<>();
-    private final ConcurrentMap<String, List<String>> documentSegmentIds = new ConcurrentHashMap<>();
+
+    @ConfigProperty(name = "ingestion.window-chars", defaultValue = "8192")
+    int windowChars;
+
+    @ConfigProperty(name = "catalog.reconcile-on-startup", defaultValue = "false")
+    boolean reconcileOnStartup;
+
+    final DocumentRegistry registry = new DocumentRegistry();
+
+    // Filenames ingested or deleted while a reconciliation scans the collection, their scanned points may be stale
+    private final Set<String> changedWhileReconciling = ConcurrentHashMap.newKeySet();
+    private volatile boolean reconciling;
 
     @PostConstruct
     void initialize() {
+        long startedAt = System.nanoTime();
+        boolean catalogExisted = false;
         try {
-            // Search for all documents to rebuild metadata from existing embeddings
-            var searchResult = embeddingStore.search(EmbeddingSearchRequest.builder()
-                    .queryEmbedding(embeddingModel.embed("document").content())
-                    .maxResults(1000)
-                    .minScore(0.0)
-                    .build());
-            
-            // Rebuild document metadata from stored segments
-            Map<String, Integer> chunkCounts = new HashMap<>();
-            Map<String, List<String>> segmentIdsByDoc = new HashMap<>();
-            
-            searchResult.matches().forEach(match -> {
-                var segment = match.embedded();
-                var metadata = segment.metadata();
-                String documentId = metadata.getString("documentId");
-                String filename = metadata.getString("filename");
-                String segmentId = match.embeddingId();
-                
-                if (documentId != null && filename != null && segmentId != null) {
-                    chunkCounts.put(documentId, chunkCounts.getOrDefault(documentId, 0) + 1);
-                    segmentIdsByDoc.computeIfAbsent(documentId, k -> new ArrayList<>()).add(segmentId);
-                    
-                    if (!documents.containsKey(documentId)) {
-                        // Create metadata for restored document
-                        DocumentMetadata docMetadata = DocumentMetadata.create(documentId, filename, "text/plain", 0);
-                        documents.put(documentId, docMetadata);
-                    }
+            // Restore document metadata and segment IDs from the local catalog
+            catalog.load().forEach(entry -> registry.put(entry.document(), entry.segmentIds(), entry.chunkHashes()));
+            catalogExisted = catalog.existed();
+            System.out.println("Restored " + registry.size() + " documents from catalog in "
+                + (System.nanoTime() - startedAt) / 1_000_000 + " ms");
+        } catch (Exception e) {
+            System.out.println("Document catalog could not be loaded: " + e.getMessage());
+        }
+        
+        // Without a catalog, e.g. on the first start after an upgrade, documents are recovered from Qdrant
+        if (reconcileOnStartup || !catalogExisted) {
+            Thread.ofPlatform().daemon().name("catalog-reconciler").start(() -> {
+                try {
+                    reconcileWithVectorStore();
+                } catch (Exception e) {
+                    System.out.println("Catalog reconciliation failed: " + e.getMessage());
                 }
             });
-            
-            // Update chunk counts and segment IDs
-            chunkCounts.forEach((docId, count) -> {
-                DocumentMetadata existing = documents.get(docId);
-                if (existing != null) {
-                    documents.put(docId, existing.withChunkCount(count));
+        } else if (lexicalIndex.isEnabled()) {
+            // The catalog has no chunk texts, the lexical index is filled from the Qdrant payloads instead
+            Thread.ofPlatform().daemon().name("lexical-index-loader").start(() -> {
+                try {
+                    loadLexicalIndex();
+                } catch (Exception e) {
+                    System.out.println("Lexical index could not be loaded: " + e.getMessage());
                 }
             });
-            
-            // Restore segment ID tracking
-            segmentIdsByDoc.forEach((docId, segmentIds) -> {
-                documentSegmentIds.put(docId, segmentIds);
-            });
-            
-            System.out.println("Restored " + documents.size() + " documents from vector store");
-        } catch (Exception e) {
-            System.out.println("Collection initialization completed: " + e.getMessage());
         }
     }
 
-    public DocumentMetadata processDocument(String filename, String contentType, long size, InputStream inputStream) throws IOException {
-        // Check for existing document with same filename and remove from metadata only
-        String existingDocumentId = documents.values().stream()
-            .filter(doc -> doc.filename().equals(filename))
+    void loadLexicalIndex() throws Exception {
+        long startedAt = System.nanoTime();
+        long points = scroller.scroll(point -> {
+            String documentId = point.payload().get("documentId");
+            boolean registered = documentId != null && registry.get(documentId)
+                .map(entry -> entry.segmentIds().contains(point.id()))
+                .orElse(false);
+            if (registered) {
+                indexLexically(point);
+            }
+        });
+        System.out.println("Loaded lexical index from " + points + " vectors in "
+            + (System.nanoTime() - startedAt) / 1_000_000 + " ms");
+    }
+
+    private void indexLexically(QdrantCollectionScroller.ScrolledPoint point) {
+        String text = point.payload().get("text_segment");
+        if (text != null) {
+            Metadata metadata = new Metadata()
+                .put("documentId", point.payload().get("documentId"))
+                .put("filename", point.payload().getOrDefault("filename", ""));
+            lexicalIndex.addAll(List.of(point.id()), List.of(TextSegment.from(text, metadata)));
+        }
+    }
+
+    // Compares the catalog with every point in the collection and repairs differences in both directions.
+    // Documents ingested or deleted while the scan runs are left alone in both directions, their points
+    // may have been scanned half way through the change.
+    public synchronized ReconcileResult reconcileWithVectorStore() throws Exception {
+        long startedAt = System.nanoTime();
+        changedWhileReconciling.clear();
+        reconciling = true;
+        try {
+            return reconcile(startedAt, LocalDateTime.now());
+        } finally {
+            reconciling = false;
+            changedWhileReconciling.clear();
+        }
+    }
+
+    private ReconcileResult reconcile(long startedAt, LocalDateTime scanStartedAt) throws Exception {
+        // Rebuild document metadata from stored segments
+        Map<String, String> filenames = new HashMap<>();
+        Map<String, List<String>> segmentIdsByDoc = new HashMap<>();
+        Map<String, Map<String, String>> chunkHashesByDoc = new HashMap<>();
+        Map<String, List<String>> chunkIndexesByDoc = new HashMap<>();
+        long points = scroller.scroll(point -> {
+            String documentId = point.payload().get("documentId");
+            String filename = point.payload().get("filename");
+            if (documentId != null && filename != null) {
+                filenames.putIfAbsent(documentId, filename);
+                segmentIdsByDoc.computeIfAbsent(documentId, k -> new ArrayList<>()).add(point.id());
+                String chunkHash = point.payload().get("chunkHash");
+                if (chunkHash != null) {
+                    chunkHashesByDoc.computeIfAbsent(documentId, k -> new HashMap<>()).put(point.id(), chunkHash);
+                }
+                String index = point.payload().get("index");
+                if (index != null) {
+                    chunkIndexesByDoc.computeIfAbsent(documentId, k -> new ArrayList<>()).add(index);
+                }
+                indexLexically(point);
+            }
+        });
+        
+        int added = 0;
+        int updated = 0;
+        int skipped = 0;
+        for (Map.Entry<String, List<String>> scanned : segmentIdsByDoc.entrySet()) {
+            String documentId = scanned.getKey();
+            List<String> segmentIds = scanned.getValue();
+            DocumentCatalog.Entry existing = registry.get(documentId).orElse(null);
+            DocumentMetadata metadata;
+            String filename = filenames.get(documentId);
+            if (changedWhileReconciling.contains(filename) || registry.isClaimed(filename)
+                    || existing != null && changedWhileReconciling.contains(existing.document().filename())) {
+                metadata = null;
+            } else if (existing == null) {
+                // Create metadata for restored document, unless chunks are evidently missing
+                metadata = isComplete(segmentIds, chunkIndexesByDoc.get(documentId))
+                    ? DocumentMetadata.create(documentId, filename, "text/plain", 0).withChunkCount(segmentIds.size())
+                    : null;
+            } else if (Set.copyOf(segmentIds).equals(Set.copyOf(existing.segmentIds()))) {
+                continue;
+            } else {
+                // The catalog lists other segment ids, only take the scanned ones if they are the whole document
+                metadata = segmentIds.size() == existing.document().chunkCount() ? existing.document() : null;
+            }
+            if (metadata == null) {
+                skipped++;
+                forgetLexically(documentId, segmentIds);
+                continue;
+            }
+            if (existing == null) {
+                added++;
+            } else {
+                updated++;
+            }
+            DocumentCatalog.Entry entry = registry.put(metadata, segmentIds, chunkHashesByDoc.get(documentId));
+            catalog.put(entry.document(), entry.segmentIds(), entry.chunkHashes());
+        }
+        
+        // Documents without any vectors left, ignoring the ones uploaded or changed while the scan was running
+        List<String> missing = registry.documents().stream()
+            .filter(doc -> !segmentIdsByDoc.containsKey(doc.id()) && doc.uploadedAt().isBefore(scanStartedAt)
+                && !changedWhileReconciling.contains(doc.filename()))
             .map(DocumentMetadata::id)
-            .findFirst()
-            .orElse(null);
+            .toList();
+        missing.forEach(documentId -> registry.remove(documentId)
+            .ifPresent(entry -> lexicalIndex.removeAll(entry.segmentIds())));
+        catalog.removeAll(missing);
         
-        if (existingDocumentId != null) {
-            // Remove from metadata maps (vector store entries will remain but become orphaned)
-            documents.remove(existingDocumentId);
-            documentSegmentIds.remove(existingDocumentId);
+        long durationMs = (System.nanoTime() - startedAt) / 1_000_000;
+        System.out.println("Reconciled catalog with " + points + " vectors in " + durationMs + " ms: "
+            + added + " added, " + updated + " updated, " + missing.size() + " removed, " + skipped + " skipped");
+        return new ReconcileResult(points, added, updated, missing.size(), skipped, durationMs);
+    }
+
+    // Chunks are numbered from 0 while a document is split, so distinct numbers with a gap are the
+    // leftovers of an ingestion that stopped, e.g. one whose cleanup failed. Re-uploads keep the
+    // numbers of reused chunks, repeated numbers therefore mean versions were mixed, not missing chunks.
+    private static boolean isComplete(List<String> segmentIds, List<String> chunkIndexes) {
+        if (chunkIndexes == null || chunkIndexes.size() != segmentIds.size()) {
+            return true;
+        }
+        Set<String> distinct = Set.copyOf(chunkIndexes);
+        if (distinct.size() != chunkIndexes.size()) {
+            return true;
+        }
+        for (int i = 0; i < chunkIndexes.size(); i++) {
+            if (!distinct.contains(String.valueOf(i))) {
+                return false;
+            }
         }
+        return true;
+    }
+
+    // Points of documents that were not taken over shouldn't be found by keyword either
+    private void forgetLexically(String documentId, List<String> scannedSegmentIds) {
+        Set<String> registered = registry.get(documentId)
+            .map(entry -> Set.copyOf(entry.segmentIds()))
+            .orElse(Set.of());
+        lexicalIndex.removeAll(scannedSegmentIds.stream().filter(id -> !registered.contains(id)).toList());
+    }
+
+    private void changed(String filename) {
+        if (reconciling) {
+            changedWhileReconciling.add(filename);
+        }
+    }
+
+    public DocumentMetadata processDocument(String filename, String contentType, InputStream inputStream) throws IOException {
+        return processDocument(filename, contentType, inputStream, IngestionProgress.NONE);
+    }
+
+    // Spooled like queued uploads, so an unchanged re-upload is recognized before anything is parsed
+    public DocumentMetadata processDocument(String filename, String contentType, InputStream inputStream,
+                                            IngestionProgress progress) throws IOException {
+        Path file = Files.createTempFile("ingestion-", ".upload");
+        try {
+            try (inputStream) {
+                Files.copy(inputStream, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return processDocument(filename, contentType, file, progress);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    public DocumentMetadata processDocument(String filename, String contentType, Path file, IngestionProgress progress) throws IOException {
+        // Hash the upload first so an unchanged re-upload skips parsing and embedding entirely
+        Timer.Sample sample = metrics.start();
+        String contentHash;
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            contentHash = sha256(inputStream);
+        }
+        try (DocumentRegistry.FilenameClaim claim = registry.claim(filename);
+             InputStream inputStream = Files.newInputStream(file)) {
+            DocumentMetadata existing = registry.findByFilename(filename).map(DocumentCatalog.Entry::document).orElse(null);
+            if (existing != null && contentHash.equals(existing.contentHash())) {
+                progress.onUnchanged();
+                metrics.ingestionCompleted(sample, "unchanged");
+                return existing;
+            }
+            return ingest(filename, contentType, Files.size(file), inputStream, progress, sample);
+        }
+    }
+
+    private DocumentMetadata ingest(String filename, String contentType, long size, InputStream inputStream,
+                                    IngestionProgress progress, Timer.Sample sample) throws IOException {
+        changed(filename);
+        try {
+            DocumentMetadata metadata = extractAndStore(filename, contentType, size, inputStream, progress);
+            metrics.documentIngested(metadata.chunkCount(), size);
+            metrics.ingestionCompleted(sample, "stored");
+            return metadata;
+        } catch (IOException | RuntimeException e) {
+            metrics.ingestionCompleted(sample, "failed");
+            throw e;
+        } finally {
+            // Covers ingestions that started before a reconciliation and ended during its scan
+            changed(filename);
+        }
+    }
+
+    // Callers hold the claim on the filename, so the existing document can't change underneath
+    private DocumentMetadata extractAndStore(String filename, String contentType, long size, InputStream inputStream,
+                                             IngestionProgress progress) throws IOException {
+        // A re-upload keeps the id of the document it replaces, so unchanged chunks can be reused as they are
+        DocumentCatalog.Entry existing = registry.findByFilename(filename).orElse(null);
+        String documentId = existing != null ? existing.document().id() : UUID.randomUUID().toString();
+        
+        // Unchanged chunks of the previous version, by content hash
+        Map<String, Deque<String>> reusableSegments = new HashMap<>();
+        if (existing != null) {
+            existing.chunkHashes().forEach((segmentId, chunkHash) ->
+                reusableSegments.computeIfAbsent(chunkHash, k -> new ArrayDeque<>()).add(segmentId));
+        }
+        List<String> previousSegmentIds = existing != null ? existing.segmentIds() : List.of();
+        List<String> reusedSegmentIds = new ArrayList<>();
+        Map<String, String> chunkHashes = new HashMap<>();
+        List<String> newChunkHashes = new ArrayList<>();
+        List<String> lexicallyIndexed = Collections.synchronizedList(new ArrayList<>());
         
-        String documentId = UUID.randomUUID().toString();
+        // Segments are embedded and stored batch by batch while Tika is still extracting text, and
+        // indexed lexically once stored, so no more than the batches in flight are held in memory
+        EmbeddingPipeline.Session pipeline = embeddingPipeline.begin(progress, (ids, segments) -> {
+            if (lexicalIndex.isEnabled()) {
+                lexicalIndex.addAll(ids, segments);
+                lexicallyIndexed.addAll(ids);
+            }
+        });
+        ChunkingService.Strategy strategy = chunking.strategyFor(mediaType(filename, contentType));
+        DocumentSplitter splitter = chunking.splitter(strategy);
+        DocumentSplitter timedSplitter = document -> metrics.time(RagMetrics.IngestionStage.SPLIT, () -> splitter.split(document));
+        StreamingChunker chunker = new StreamingChunker(timedSplitter, windowChars, chunking.overlapChars(strategy),
+                embeddingPipeline.batchSize(), chunking.sectionAware(strategy), batch -> {
+            progress.onChunked(batch.size());
+            chunking.chunked(strategy, batch);
+            
+            List<TextSegment> changed = new ArrayList<>();
+            for (TextSegment segment : batch) {
+                String chunkHash = sha256(segment.text());
+                Deque<String> candidates = reusableSegments.get(chunkHash);
+                String reusedId = candidates == null ? null : candidates.poll();
+                if (reusedId != null) {
+                    reusedSegmentIds.add(reusedId);
+                    chunkHashes.put(reusedId, chunkHash);
+                } else {
+                    // Add metadata to segments
+                    segment.metadata().put("documentId", documentId)
+                                      .put("filename", filename)
+                                      .put("chunkHash", chunkHash);
+                    newChunkHashes.add(chunkHash);
+                    changed.add(segment);
+                }
+            }
+            
+            // Reused chunks already have their embedding in the store
+            int reused = batch.size() - changed.size();
+            if (reused > 0) {
+                progress.onEmbedded(reused);
+                progress.onStored(reused);
+            }
+            
+            // Generate embeddings and store, several batches at a time
+            if (!changed.isEmpty()) {
+                pipeline.submit(changed);
+            }
+        });
+        
+        DigestInputStream digestStream = new DigestInputStream(inputStream, sha256Digest());
         
         // Extract text using Tika with embedded content disabled
-        String content;
         try {
-            // Read stream into byte array first
-            byte[] data = inputStream.readAllBytes();
-            
             // Configure parser to skip embedded content
             org.apache.tika.parser.AutoDetectParser parser = new org.apache.tika.parser.AutoDetectParser();
             org.apache.tika.metadata.Metadata tikaMetadata = new org.apache.tika.metadata.Metadata();
@@ -130,52 +412,238 @@ public class DocumentProcessingService {
                            }
                        });
             
-            java.io.StringWriter writer = new java.io.StringWriter();
-            org.apache.tika.sax.BodyContentHandler handler = new org.apache.tika.sax.BodyContentHandler(writer);
+            org.apache.tika.sax.BodyContentHandler handler = new org.apache.tika.sax.BodyContentHandler(chunker.contentHandler());
             
-            parser.parse(new java.io.ByteArrayInputStream(data), handler, tikaMetadata, context);
-            content = writer.toString();
+            // TikaInputStream spools to a temp file for formats that need random access instead of buffering in memory.
+            // Splitting and handing batches to the pipeline happen inside the parse and are part of this time.
+            long parseStartedAt = System.nanoTime();
+            try {
+                parser.parse(org.apache.tika.io.TikaInputStream.get(digestStream), handler, tikaMetadata, context);
+            } finally {
+                metrics.record(RagMetrics.IngestionStage.PARSE, System.nanoTime() - parseStartedAt);
+            }
         } catch (Exception e) {
-            // If all else fails, return a basic error message
-            content = "Document content could not be extracted due to parsing issues.";
+            // Embedding failures abort the parse as well, they are rethrown by pipeline.await(). A document
+            // that breaks off after some text must not be stored as if that was all of it.
+            if (!pipeline.hasFailed() && chunker.characterCount() > 0) {
+                pipeline.abort(new IllegalStateException("Text extraction for " + filename + " stopped early: " + e.getMessage(), e));
+            }
         }
         
-        // Create document and split into chunks
-        Document document = Document.from(content);
-        List<TextSegment> segments = splitter.split(document);
+        if (!pipeline.hasFailed()) {
+            try {
+                if (chunker.characterCount() == 0 && chunker.segmentCount() == 0) {
+                    // If all else fails, return a basic error message
+                    chunker.append("Document content could not be extracted due to parsing issues.");
+                }
+                chunker.finish();
+            } catch (RuntimeException e) {
+                if (!pipeline.hasFailed()) {
+                    throw e;
+                }
+            }
+        }
+        progress.onParsed();
+        List<String> newSegmentIds;
+        try {
+            newSegmentIds = pipeline.await();
+        } catch (RuntimeException e) {
+            // The pipeline removed the stored batches, their text must not stay searchable either
+            lexicalIndex.removeAll(List.copyOf(lexicallyIndexed));
+            throw e;
+        }
+        chunking.documentChunked(strategy);
         
-        // Add metadata to segments
-        segments.forEach(segment -> segment.metadata().put("documentId", documentId)
-                                           .put("filename", filename));
+        // Parsers may stop before the end of the stream, the hash must still cover all bytes
+        digestStream.transferTo(OutputStream.nullOutputStream());
+        String contentHash = HexFormat.of().formatHex(digestStream.getMessageDigest().digest());
         
-        // Generate embeddings and store
-        List<Embedding> embeddings = embeddingModel.embedAll(segments).content();
-        List<String> segmentIds = embeddingStore.addAll(embeddings, segments);
+        List<String> segmentIds = new ArrayList<>(reusedSegmentIds);
+        segmentIds.addAll(newSegmentIds);
         
-        // Track segment IDs for deletion
-        documentSegmentIds.put(documentId, segmentIds);
+        // Pipeline results are in submission order, which is the order the hashes were recorded in
+        for (int i = 0; i < newSegmentIds.size(); i++) {
+            chunkHashes.put(newSegmentIds.get(i), newChunkHashes.get(i));
+        }
         
-        // Create and store metadata
+        // Create and store metadata, tracking segment IDs for deletion
         DocumentMetadata metadata = DocumentMetadata.create(documentId, filename, contentType, size)
-                                                   .withChunkCount(segments.size());
-        documents.put(documentId, metadata);
+                                                   .withChunkCount(chunker.segmentCount())
+                                                   .withContentHash(contentHash);
+        registry.put(metadata, segmentIds, chunkHashes);
+        catalog.put(metadata, segmentIds, chunkHashes);
+        
+        // Cached answers built from the replaced version, or without any context, may now be wrong
+        if (existing != null) {
+            answerCache.invalidateDocument(documentId);
+        }
+        answerCache.invalidateContextFree();
+        
+        // Chunks of the previous version that no longer occur in the document
+        Set<String> reused = Set.copyOf(reusedSegmentIds);
+        List<String> staleSegmentIds = existing == null ? List.of() : previousSegmentIds.stream()
+            .filter(segmentId -> !reused.contains(segmentId))
+            .toList();
+        // Stale text drops out of the lexical index even if the vector store can't be reached
+        lexicalIndex.removeAll(staleSegmentIds);
+        if (!staleSegmentIds.isEmpty()) {
+            try {
+                embeddingStore.removeAll(staleSegmentIds);
+            } catch (Exception e) {
+                // The new version is stored and stays so, the leftover ids are logged for removal by hand
+                System.out.println("Could not remove " + staleSegmentIds.size() + " stale segments of " + filename
+                    + ": " + e.getMessage() + ", left over: " + staleSegmentIds);
+            }
+        }
         
         return metadata;
     }
 
     public List<DocumentMetadata> getAllDocuments() {
-        return List.copyOf(documents.values());
+        return registry.documents();
+    }
+
+    public List<DocumentMetadata> getDocuments(int offset, int limit) {
+        return registry.page(offset, limit);
+    }
+
+    public List<DocumentMetadata> findByContentHash(String contentHash) {
+        return registry.findByContentHash(contentHash);
     }
 
     public boolean deleteDocument(String documentId) {
-        DocumentMetadata metadata = documents.remove(documentId);
-        List<String> segmentIds = documentSegmentIds.remove(documentId);
+        String filename = registry.get(documentId).map(entry -> entry.document().filename()).orElse(null);
+        if (filename == null) {
+            return false;
+        }
         
-        if (metadata != null && segmentIds != null) {
-            // Remove segments from vector store
-            segmentIds.forEach(embeddingStore::remove);
-            return true;
+        // A re-upload of the file keeps the document id, without the claim it would put the document back
+        try (DocumentRegistry.FilenameClaim claim = registry.claim(filename)) {
+            DocumentCatalog.Entry removed = registry.remove(documentId).orElse(null);
+            
+            if (removed != null) {
+                changed(removed.document().filename());
+                catalog.remove(documentId);
+                List<String> segmentIds = removed.segmentIds();
+                // Remove all segments from vector store in a single call
+                if (!segmentIds.isEmpty()) {
+                    embeddingStore.removeAll(segmentIds);
+                }
+                lexicalIndex.removeAll(segmentIds);
+                answerCache.invalidateDocument(documentId);
+                return true;
+            }
+            return false;
+        }
+    }
+
+    public BulkDeleteResult deleteDocuments(Collection<String> documentIds) {
+        // Claimed in sorted order, so two bulk deletes can't wait for each other
+        Set<String> filenames = new TreeSet<>();
+        documentIds.forEach(documentId -> registry.get(documentId).ifPresent(entry -> filenames.add(entry.document().filename())));
+        List<DocumentRegistry.FilenameClaim> claims = new ArrayList<>();
+        try {
+            filenames.forEach(filename -> claims.add(registry.claim(filename)));
+            return deleteClaimed(documentIds);
+        } finally {
+            claims.forEach(DocumentRegistry.FilenameClaim::close);
         }
-        return false;
+    }
+
+    private BulkDeleteResult deleteClaimed(Collection<String> documentIds) {
+        long startedAt = System.nanoTime();
+        
+        Map<String, List<String>> segmentIdsByDocument = new LinkedHashMap<>();
+        List<String> notFound = new ArrayList<>();
+        for (String documentId : new LinkedHashSet<>(documentIds)) {
+            registry.get(documentId).ifPresentOrElse(
+                entry -> segmentIdsByDocument.put(documentId, entry.segmentIds()),
+                () -> notFound.add(documentId));
+        }
+        
+        List<String> deleted = new ArrayList<>();
+        Map<String, String> failed = new LinkedHashMap<>();
+        List<String> allSegmentIds = segmentIdsByDocument.values().stream().flatMap(List::stream).toList();
+        try {
+            // One round trip for all documents
+            if (!allSegmentIds.isEmpty()) {
+                embeddingStore.removeAll(allSegmentIds);
+            }
+            deleted.addAll(segmentIdsByDocument.keySet());
+        } catch (Exception e) {
+            // Retry document by document so one failure does not block the others
+            segmentIdsByDocument.forEach((documentId, segmentIds) -> {
+                try {
+                    if (!segmentIds.isEmpty()) {
+                        embeddingStore.removeAll(segmentIds);
+                    }
+                    deleted.add(documentId);
+                } catch (Exception documentFailure) {
+                    failed.put(documentId, documentFailure.getMessage());
+                }
+            });
+        }
+        
+        // Documents whose vectors could not be removed stay registered so the delete can be retried
+        deleted.forEach(documentId -> {
+            registry.remove(documentId).ifPresent(entry -> changed(entry.document().filename()));
+            lexicalIndex.removeAll(segmentIdsByDocument.get(documentId));
+            answerCache.invalidateDocument(documentId);
+        });
+        catalog.removeAll(deleted);
+        
+        long latencyMs = (System.nanoTime() - startedAt) / 1_000_000;
+        System.out.println("Bulk delete removed " + deleted.size() + " documents (" + allSegmentIds.size()
+            + " segments) in " + latencyMs + " ms, " + failed.size() + " failed");
+        return new BulkDeleteResult(deleted, notFound, failed, latencyMs);
+    }
+
+    // Browsers send application/octet-stream for types they don't know and form uploads used to
+    // send text/plain for everything, so for those the file extension says more
+    String mediaType(String filename, String contentType) {
+        boolean unknown = contentType == null || contentType.isBlank()
+            || contentType.startsWith("application/octet-stream") || contentType.startsWith("text/plain");
+        if (!unknown) {
+            return contentType;
+        }
+        String detected = tika.detect(filename);
+        return detected.equals("application/octet-stream") && contentType != null && !contentType.isBlank() ? contentType : detected;
+    }
+
+    private static MessageDigest sha256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static String sha256(String text) {
+        return HexFormat.of().formatHex(sha256Digest().digest(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String sha256(InputStream inputStream) throws IOException {
+        DigestInputStream digestStream = new DigestInputStream(inputStream, sha256Digest());
+        digestStream.transferTo(OutputStream.nullOutputStream());
+        return HexFormat.of().formatHex(digestStream.getMessageDigest().digest());
+    }
+
+    public record ReconcileResult(long vectors, int added, int updated, int removed, int skipped, long durationMs) {}
+
+    public record BulkDeleteResult(List<String> deleted, List<String> notFound, Map<String, String> failed, long latencyMs) {}
+
+    // Chunk counts are reported per batch, onParsed() once text extraction has finished
+    public interface IngestionProgress {
+        IngestionProgress NONE = new IngestionProgress() {};
+
+        default void onUnchanged() {}
+
+        default void onParsed() {}
+
+        default void onChunked(int chunks) {}
+
+        default void onEmbedded(int chunks) {}
+
+        default void onStored(int chunks) {}
     }
 }
@@ -0,0 +1,148 @@
+package com.vsti.quarkusai;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+
+// In-memory view of all documents with their segment ids, indexed by id, filename and content
+// hash, plus an upload-ordered view for paging. Writes are serialized so the indexes never
+// disagree with each other, reads go straight to the concurrent maps.
+public class DocumentRegistry {
+
+    private static final Comparator<SortKey> UPLOAD_ORDER = Comparator
+        .comparing(SortKey::uploadedAt)
+        .thenComparing(SortKey::id);
+
+    private final ConcurrentMap<String, DocumentCatalog.Entry> byId = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, String> idByFilename = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Set<String>> idsByContentHash = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<SortKey, DocumentMetadata> sorted = new ConcurrentSkipListMap<>(UPLOAD_ORDER);
+    private final ConcurrentMap<String, FilenameClaim> claims = new ConcurrentHashMap<>();
+
+    public synchronized DocumentCatalog.Entry put(DocumentMetadata document, List<String> segmentIds,
+                                                  Map<String, String> chunkHashes) {
+        DocumentCatalog.Entry entry = new DocumentCatalog.Entry(document, List.copyOf(segmentIds),
+            chunkHashes == null ? Map.of() : Map.copyOf(chunkHashes));
+        unindex(byId.put(document.id(), entry));
+
+        idByFilename.put(document.filename(), document.id());
+        if (document.contentHash() != null) {
+            idsByContentHash.computeIfAbsent(document.contentHash(), k -> ConcurrentHashMap.newKeySet()).add(document.id());
+        }
+        sorted.put(SortKey.of(document), document);
+        return entry;
+    }
+
+    public synchronized Optional<DocumentCatalog.Entry> remove(String documentId) {
+        DocumentCatalog.Entry removed = byId.remove(documentId);
+        unindex(removed);
+        return Optional.ofNullable(removed);
+    }
+
+    public Optional<DocumentCatalog.Entry> get(String documentId) {
+        return Optional.ofNullable(byId.get(documentId));
+    }
+
+    public Optional<DocumentCatalog.Entry> findByFilename(String filename) {
+        String documentId = idByFilename.get(filename);
+        return documentId == null ? Optional.empty() : get(documentId);
+    }
+
+    public List<DocumentMetadata> findByContentHash(String contentHash) {
+        return idsByContentHash.getOrDefault(contentHash, Set.of()).stream()
+            .map(byId::get)
+            .filter(Objects::nonNull)
+            .map(DocumentCatalog.Entry::document)
+            .sorted(Comparator.comparing(SortKey::of, UPLOAD_ORDER))
+            .toList();
+    }
+
+    // All documents, oldest upload first
+    public List<DocumentMetadata> documents() {
+        return List.copyOf(sorted.values());
+    }
+
+    // Walks the sorted view only up to the requested page instead of copying every document
+    public List<DocumentMetadata> page(int offset, int limit) {
+        return sorted.values().stream()
+            .skip(Math.max(0, offset))
+            .limit(Math.max(0, limit))
+            .toList();
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    // Holds off other ingestions of the same filename until the claim is closed, so concurrent
+    // uploads of one file are applied one after the other instead of both creating a document
+    public FilenameClaim claim(String filename) {
+        FilenameClaim claim = new FilenameClaim(filename);
+        while (true) {
+            FilenameClaim current = claims.putIfAbsent(filename, claim);
+            if (current == null) {
+                return claim;
+            }
+            current.awaitRelease();
+        }
+    }
+
+    // True while an ingestion of the filename holds its claim
+    public boolean isClaimed(String filename) {
+        return claims.containsKey(filename);
+    }
+
+    private void unindex(DocumentCatalog.Entry entry) {
+        if (entry == null) {
+            return;
+        }
+        DocumentMetadata document = entry.document();
+        idByFilename.remove(document.filename(), document.id());
+        if (document.contentHash() != null) {
+            idsByContentHash.computeIfPresent(document.contentHash(), (hash, ids) -> {
+                ids.remove(document.id());
+                return ids.isEmpty() ? null : ids;
+            });
+        }
+        sorted.remove(SortKey.of(document));
+    }
+
+    public class FilenameClaim implements AutoCloseable {
+
+        private final String filename;
+        private final CountDownLatch released = new CountDownLatch(1);
+
+        private FilenameClaim(String filename) {
+            this.filename = filename;
+        }
+
+        private void awaitRelease() {
+            try {
+                released.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for another upload of " + filename, e);
+            }
+        }
+
+        @Override
+        public void close() {
+            claims.remove(filename, this);
+            released.countDown();
+        }
+    }
+
+    private record SortKey(LocalDateTime uploadedAt, String id) {
+        static SortKey of(DocumentMetadata document) {
+            return new SortKey(document.uploadedAt(), document.id());
+        }
+    }
+}
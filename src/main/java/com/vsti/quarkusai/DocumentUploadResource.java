@@ -6,8 +6,12 @@ import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.resteasy.reactive.multipart.FileUpload;
+
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -17,6 +21,12 @@ public class DocumentUploadResource {
     @Inject
     DocumentProcessingService documentService;
 
+    @Inject
+    IngestionJobService ingestionJobService;
+
+    @ConfigProperty(name = "upload.batch.max-files", defaultValue = "100")
+    int maxBatchFiles;
+
     @Inject
     Template documents;
 
@@ -26,36 +36,110 @@ public class DocumentUploadResource {
     @Produces(MediaType.APPLICATION_JSON)
     public Response uploadDocument(@FormParam("file") InputStream fileStream,
                                    @FormParam("filename") String filename) {
-        List<DocumentMetadata> results = new ArrayList<>();
-        List<String> errors = new ArrayList<>();
+        if (fileStream == null || filename == null || filename.isEmpty()) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                .entity(new UploadResponse(List.of(), List.of("No file uploaded or filename missing"), "Upload failed"))
+                .build();
+        }
 
-        if (fileStream != null && filename != null && !filename.isEmpty()) {
+        try {
+            // The form only sends the file's bytes, its type is detected from the filename
+            IngestionJob job = ingestionJobService.submit(filename, documentService.mediaType(filename, null), fileStream);
+            return Response.accepted(job.status()).build();
+        } catch (IngestionJobService.QueueFullException e) {
+            return Response.status(Response.Status.TOO_MANY_REQUESTS)
+                .header("Retry-After", "5")
+                .entity(new UploadResponse(List.of(), List.of(e.getMessage()), "Upload rejected"))
+                .build();
+        } catch (IOException e) {
+            return Response.serverError()
+                .entity(new UploadResponse(List.of(), List.of("Failed to receive " + filename + ": " + e.getMessage()), "Upload failed"))
+                .build();
+        }
+    }
+
+    @POST
+    @Path("/upload/batch")
+    @Consumes(MediaType.MULTIPART_FORM_DATA)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response uploadDocuments(MultiFileUploadForm form) {
+        if (form == null || form.files == null || form.files.isEmpty()) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                .entity(new UploadResponse(List.of(), List.of("No files uploaded"), "Upload failed"))
+                .build();
+        }
+        if (form.files.size() > maxBatchFiles) {
+            return Response.status(Response.Status.REQUEST_ENTITY_TOO_LARGE)
+                .entity(new UploadResponse(List.of(), List.of("At most " + maxBatchFiles + " files per batch"), "Upload rejected"))
+                .build();
+        }
+
+        // Every file becomes an ingestion job of its own, so a batch shares the workers and queue limit of single uploads
+        List<IngestionJob.Status> jobs = new ArrayList<>();
+        List<String> errors = new ArrayList<>();
+        boolean queueFull = false;
+        for (int i = 0; i < form.files.size(); i++) {
+            FileUpload upload = form.files.get(i);
+            String filename = valueAt(form.fileNames, i, upload.fileName());
+            String contentType = valueAt(form.contentTypes, i, upload.contentType());
             try {
-                DocumentMetadata metadata = documentService.processDocument(
-                    filename,
-                    "text/plain", // We could determine this from file extension
-                    0, // Size not available
-                    fileStream
-                );
-                results.add(metadata);
+                IngestionJob job = ingestionJobService.submit(filename, documentService.mediaType(filename, contentType),
+                    Files.newInputStream(upload.uploadedFile()));
+                jobs.add(job.status());
+            } catch (IngestionJobService.QueueFullException e) {
+                queueFull = true;
+                errors.add("Rejected " + filename + ": " + e.getMessage());
             } catch (IOException e) {
-                errors.add("Failed to process " + filename + ": " + e.getMessage());
+                errors.add("Failed to receive " + filename + ": " + e.getMessage());
             }
-        } else {
-            errors.add("No file uploaded or filename missing");
         }
 
-        // Add success message for UI feedback
-        String message = results.isEmpty() ? "Upload failed" : 
-                        results.size() + " document(s) uploaded successfully";
+        String message = jobs.size() + "/" + form.files.size() + " documents queued";
+        if (jobs.isEmpty() && queueFull) {
+            return Response.status(Response.Status.TOO_MANY_REQUESTS)
+                .header("Retry-After", "5")
+                .entity(new BatchUploadResponse(jobs, errors, message))
+                .build();
+        }
+        return Response.accepted(new BatchUploadResponse(jobs, errors, message)).build();
+    }
+
+    @GET
+    @Path("/jobs")
+    @Produces(MediaType.APPLICATION_JSON)
+    public List<IngestionJob.Status> listJobs() {
+        return ingestionJobService.getJobs();
+    }
 
-        return Response.ok(new UploadResponse(results, errors, message)).build();
+    @GET
+    @Path("/jobs/stats")
+    @Produces(MediaType.APPLICATION_JSON)
+    public IngestionJobService.Stats jobStats() {
+        return ingestionJobService.stats();
     }
 
     @GET
+    @Path("/jobs/{jobId}")
     @Produces(MediaType.APPLICATION_JSON)
-    public List<DocumentMetadata> listDocuments() {
-        return documentService.getAllDocuments();
+    public Response getJob(@PathParam("jobId") String jobId) {
+        return ingestionJobService.getJob(jobId)
+            .map(job -> Response.ok(job.status()).build())
+            .orElse(Response.status(Response.Status.NOT_FOUND).build());
+    }
+
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public List<DocumentMetadata> listDocuments(@QueryParam("offset") @DefaultValue("0") int offset,
+                                                @QueryParam("limit") Integer limit) {
+        // Without a limit all documents are returned, oldest upload first
+        return limit == null ? documentService.getAllDocuments() : documentService.getDocuments(offset, limit);
+    }
+
+    @GET
+    @Path("/by-hash/{contentHash}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public List<DocumentMetadata> findByContentHash(@PathParam("contentHash") String contentHash) {
+        return documentService.findByContentHash(contentHash);
     }
 
     @GET
@@ -77,5 +161,44 @@ public class DocumentUploadResource {
         }
     }
 
+    @POST
+    @Path("/bulk-delete")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response deleteDocuments(BulkDeleteRequest request) {
+        if (request == null || request.documentIds() == null || request.documentIds().isEmpty()) {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+
+        DocumentProcessingService.BulkDeleteResult result = documentService.deleteDocuments(request.documentIds());
+        // 207 Multi-Status when the vector store only removed part of the documents
+        int status = result.failed().isEmpty() ? Response.Status.OK.getStatusCode() : 207;
+        return Response.status(status).entity(result).build();
+    }
+
+    @POST
+    @Path("/catalog/reconcile")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response reconcileCatalog() {
+        try {
+            return Response.ok(documentService.reconcileWithVectorStore()).build();
+        } catch (Exception e) {
+            return Response.serverError()
+                .entity(new UploadResponse(List.of(), List.of(e.getMessage()), "Reconciliation failed"))
+                .build();
+        }
+    }
+
+    public record BulkDeleteRequest(List<String> documentIds) {}
+
+    private static String valueAt(List<String> values, int index, String fallback) {
+        if (values == null || index >= values.size() || values.get(index) == null || values.get(index).isBlank()) {
+            return fallback;
+        }
+        return values.get(index);
+    }
+
+    public record BatchUploadResponse(List<IngestionJob.Status> jobs, List<String> errors, String message) {}
+
     public record UploadResponse(List<DocumentMetadata> successful, List<String> errors, String message) {}
 }
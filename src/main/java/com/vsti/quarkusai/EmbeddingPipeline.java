@@ -0,0 +1,180 @@
+package com.vsti.quarkusai;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+// Embeds and stores segment batches concurrently. A global permit limit keeps the number of
+// batches in flight towards Ollama bounded across all documents being ingested, and each batch
+// is written to the store as soon as its embeddings are back, overlapping with the next calls.
+@ApplicationScoped
+public class EmbeddingPipeline {
+
+    @Inject
+    EmbeddingModel embeddingModel;
+
+    @Inject
+    @Replicated
+    EmbeddingStore<TextSegment> embeddingStore;
+
+    @Inject
+    RagMetrics metrics;
+
+    @ConfigProperty(name = "ingestion.embedding-concurrency", defaultValue = "4")
+    int concurrency;
+
+    @ConfigProperty(name = "ingestion.chunk-batch-size", defaultValue = "32")
+    int batchSize;
+
+    private Semaphore permits;
+    private ExecutorService executor;
+
+    @PostConstruct
+    void start() {
+        permits = new Semaphore(concurrency);
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(concurrency, runnable -> {
+            Thread thread = new Thread(runnable, "embedding-pipeline-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    void stop() {
+        executor.shutdownNow();
+    }
+
+    public Session begin(DocumentProcessingService.IngestionProgress progress) {
+        return begin(progress, (ids, segments) -> {});
+    }
+
+    // onStored is called with each batch as soon as it is in the store, on a pipeline thread
+    public Session begin(DocumentProcessingService.IngestionProgress progress,
+                         BiConsumer<List<String>, List<TextSegment>> onStored) {
+        return new Session(progress, onStored);
+    }
+
+    public List<String> embedAndStore(List<TextSegment> segments, DocumentProcessingService.IngestionProgress progress) {
+        Session session = begin(progress);
+        for (int start = 0; start < segments.size(); start += batchSize) {
+            session.submit(segments.subList(start, Math.min(start + batchSize, segments.size())));
+        }
+        return session.await();
+    }
+
+    public int batchSize() {
+        return batchSize;
+    }
+
+    public class Session {
+
+        private final DocumentProcessingService.IngestionProgress progress;
+        private final BiConsumer<List<String>, List<TextSegment>> onStored;
+        private final List<CompletableFuture<List<String>>> batches = new ArrayList<>();
+        private volatile RuntimeException failure;
+
+        private Session(DocumentProcessingService.IngestionProgress progress,
+                        BiConsumer<List<String>, List<TextSegment>> onStored) {
+            this.progress = progress;
+            this.onStored = onStored;
+        }
+
+        // Blocks while all permits are taken, which also throttles the producer of the batches
+        public void submit(List<TextSegment> batch) {
+            if (hasFailed()) {
+                throw new IllegalStateException("Embedding pipeline aborted after a failed batch");
+            }
+
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure = new IllegalStateException("Interrupted while waiting for an embedding slot", e);
+                throw failure;
+            }
+
+            List<TextSegment> segments = List.copyOf(batch);
+            try {
+                batches.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        List<Embedding> embeddings = metrics.time(RagMetrics.IngestionStage.EMBED,
+                            () -> embeddingModel.embedAll(segments).content());
+                        progress.onEmbedded(embeddings.size());
+                        List<String> ids = metrics.time(RagMetrics.IngestionStage.STORE,
+                            () -> embeddingStore.addAll(embeddings, segments));
+                        progress.onStored(ids.size());
+                        onStored.accept(ids, segments);
+                        return ids;
+                    } finally {
+                        permits.release();
+                    }
+                }, executor));
+            } catch (RuntimeException e) {
+                permits.release();
+                failure = e;
+                throw e;
+            }
+        }
+
+        // Fails the session for a reason outside the pipeline, await() then removes what was stored and throws it
+        public void abort(RuntimeException cause) {
+            if (failure == null) {
+                failure = cause;
+            }
+        }
+
+        public boolean hasFailed() {
+            return failure != null || batches.stream().anyMatch(CompletableFuture::isCompletedExceptionally);
+        }
+
+        // Returns the ids of all stored segments in submission order
+        public List<String> await() {
+            List<String> segmentIds = new ArrayList<>();
+            RuntimeException batchFailure = null;
+            for (CompletableFuture<List<String>> batch : batches) {
+                try {
+                    segmentIds.addAll(batch.join());
+                } catch (CompletionException e) {
+                    if (batchFailure == null) {
+                        batchFailure = e.getCause() instanceof RuntimeException cause ? cause : e;
+                    }
+                }
+            }
+
+            if (batchFailure != null || failure != null) {
+                // Don't leave the batches that did succeed behind as orphans
+                removeQuietly(segmentIds);
+                throw batchFailure != null ? batchFailure : failure;
+            }
+            return segmentIds;
+        }
+    }
+
+    private void removeQuietly(List<String> segmentIds) {
+        if (segmentIds.isEmpty()) {
+            return;
+        }
+        try {
+            embeddingStore.removeAll(segmentIds);
+        } catch (Exception e) {
+            System.out.println("Could not remove " + segmentIds.size() + " segments of failed ingestion: " + e.getMessage());
+        }
+    }
+}
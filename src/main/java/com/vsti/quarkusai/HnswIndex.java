@@ -0,0 +1,412 @@
+package com.vsti.quarkusai;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+// Hierarchical navigable small world graph for approximate cosine nearest neighbour search.
+// Vectors are normalized on insert, so similarity is a plain dot product. Removed vectors stay
+// in the graph as tombstones to keep it navigable and are dropped when the graph is rebuilt.
+// With quantization the graph is built and searched on the compact codes; if rescoring is on,
+// full precision copies are kept off-heap and the search candidates are re-ranked with them.
+public class HnswIndex {
+
+    private final int m;
+    private final int maxNeighboursLayerZero;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final Random random;
+    private final VectorStorage.Quantization quantization;
+    private final boolean rescore;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<Node> nodes = new ArrayList<>();
+    private final Map<String, Integer> nodeIds = new HashMap<>();
+    private VectorStorage vectors;
+    private VectorStorage.OffHeap fullPrecision;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+    private int deletedCount;
+
+    public HnswIndex(int m, int efConstruction, long seed) {
+        this(m, efConstruction, VectorStorage.Quantization.NONE, false, seed);
+    }
+
+    public HnswIndex(int m, int efConstruction, VectorStorage.Quantization quantization, boolean rescore, long seed) {
+        this.m = m;
+        this.maxNeighboursLayerZero = 2 * m;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1 / Math.log(m);
+        this.random = new Random(seed);
+        this.quantization = quantization;
+        // Unquantized vectors are already full precision
+        this.rescore = rescore && quantization != VectorStorage.Quantization.NONE;
+    }
+
+    public void add(String key, float[] vector) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(key);
+            insert(key, normalized(vector));
+            rebuildIfMostlyDeleted();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean remove(String key) {
+        lock.writeLock().lock();
+        try {
+            boolean removed = removeLocked(key);
+            rebuildIfMostlyDeleted();
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return nodeIds.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int graphSize() {
+        lock.readLock().lock();
+        try {
+            return nodes.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public float[] vector(String key) {
+        lock.readLock().lock();
+        try {
+            Integer id = nodeIds.get(key);
+            return id == null ? null : fullVector(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<String> keys() {
+        lock.readLock().lock();
+        try {
+            return List.copyOf(nodeIds.keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Cosine similarities of the approximate nearest neighbours, best first
+    public List<Neighbour> search(float[] query, int k, int ef, Predicate<String> accept) {
+        float[] normalizedQuery = normalized(query);
+        lock.readLock().lock();
+        try {
+            if (entryPoint < 0) {
+                return List.of();
+            }
+            VectorStorage.Scorer scorer = vectors.scorer(normalizedQuery);
+            int current = entryPoint;
+            for (int level = maxLevel; level > 0; level--) {
+                current = greedyClosest(scorer, current, level);
+            }
+            // Tombstones and rejected keys still take slots in the beam, widen it to compensate. Sign bits
+            // order neighbours coarsely, so re-scored binary searches collect more candidates.
+            int width = Math.max(ef, k) * (rescore && quantization == VectorStorage.Quantization.BINARY ? 4 : 1);
+            int beam = width + Math.min(deletedCount, width);
+            PriorityQueue<Neighbour> results = new PriorityQueue<>(Comparator.comparingDouble(Neighbour::similarity));
+            for (Candidate candidate : searchLayer(scorer, current, beam, 0)) {
+                Node node = nodes.get(candidate.id());
+                if (!node.deleted && accept.test(node.key)) {
+                    double similarity = rescore ? fullPrecision.similarity(normalizedQuery, candidate.id()) : candidate.similarity();
+                    results.add(new Neighbour(node.key, similarity));
+                    if (results.size() > k) {
+                        results.poll();
+                    }
+                }
+            }
+            return sortedDescending(results);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Exhaustive search, the reference for measuring recall. Exact unless the vectors are quantized
+    // without a full precision copy.
+    public List<Neighbour> bruteForce(float[] query, int k, Predicate<String> accept) {
+        float[] normalizedQuery = normalized(query);
+        lock.readLock().lock();
+        try {
+            if (entryPoint < 0) {
+                return List.of();
+            }
+            PriorityQueue<Neighbour> results = new PriorityQueue<>(Comparator.comparingDouble(Neighbour::similarity));
+            VectorStorage.Scorer scorer = vectors.scorer(normalizedQuery);
+            for (int id = 0; id < nodes.size(); id++) {
+                Node node = nodes.get(id);
+                if (!node.deleted && accept.test(node.key)) {
+                    double similarity = rescore ? fullPrecision.similarity(normalizedQuery, id) : scorer.similarity(id);
+                    results.add(new Neighbour(node.key, similarity));
+                    if (results.size() > k) {
+                        results.poll();
+                    }
+                }
+            }
+            return sortedDescending(results);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean isExact() {
+        return quantization == VectorStorage.Quantization.NONE || rescore;
+    }
+
+    // Heap bytes of the vectors searched by the graph and off-heap bytes of the full precision copies
+    public long vectorBytes() {
+        lock.readLock().lock();
+        try {
+            return vectors == null ? 0 : vectors.bytes();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long offHeapBytes() {
+        lock.readLock().lock();
+        try {
+            return fullPrecision == null ? 0 : fullPrecision.bytes();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private boolean removeLocked(String key) {
+        Integer id = nodeIds.remove(key);
+        if (id == null) {
+            return false;
+        }
+        nodes.get(id).deleted = true;
+        deletedCount++;
+        return true;
+    }
+
+    private void insert(String key, float[] vector) {
+        if (vectors == null) {
+            vectors = VectorStorage.create(quantization, vector.length);
+            fullPrecision = rescore ? new VectorStorage.OffHeap(vector.length) : null;
+        }
+        int level = (int) Math.floor(-Math.log(1 - random.nextDouble()) * levelMultiplier);
+        int id = nodes.size();
+        vectors.add(id, vector);
+        if (fullPrecision != null) {
+            fullPrecision.add(id, vector);
+        }
+        Node node = new Node(key, level, m, maxNeighboursLayerZero);
+        nodes.add(node);
+        nodeIds.put(key, id);
+
+        if (entryPoint < 0) {
+            entryPoint = id;
+            maxLevel = level;
+            return;
+        }
+
+        VectorStorage.Scorer scorer = vectors.scorer(vector);
+        int current = entryPoint;
+        for (int l = maxLevel; l > level; l--) {
+            current = greedyClosest(scorer, current, l);
+        }
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            List<Candidate> candidates = searchLayer(scorer, current, efConstruction, l);
+            int maxNeighbours = l == 0 ? maxNeighboursLayerZero : m;
+            List<Candidate> neighbours = candidates.subList(0, Math.min(m, candidates.size()));
+            for (Candidate neighbour : neighbours) {
+                node.link(l, neighbour.id());
+                link(neighbour.id(), id, l, maxNeighbours);
+            }
+            current = candidates.get(0).id();
+        }
+
+        if (level > maxLevel) {
+            entryPoint = id;
+            maxLevel = level;
+        }
+    }
+
+    // Adds a back link, dropping the least similar neighbour when the node is full
+    private void link(int from, int to, int level, int maxNeighbours) {
+        Node node = nodes.get(from);
+        if (node.count[level] < maxNeighbours) {
+            node.link(level, to);
+            return;
+        }
+        VectorStorage.Scorer scorer = vectors.scorer(from);
+        int weakest = -1;
+        double weakestSimilarity = scorer.similarity(to);
+        for (int i = 0; i < node.count[level]; i++) {
+            double similarity = scorer.similarity(node.links[level][i]);
+            if (similarity < weakestSimilarity) {
+                weakestSimilarity = similarity;
+                weakest = i;
+            }
+        }
+        if (weakest >= 0) {
+            node.links[level][weakest] = to;
+        }
+    }
+
+    private int greedyClosest(VectorStorage.Scorer scorer, int start, int level) {
+        int current = start;
+        double best = scorer.similarity(current);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            Node node = nodes.get(current);
+            for (int i = 0; i < node.count[level]; i++) {
+                int neighbour = node.links[level][i];
+                double similarity = scorer.similarity(neighbour);
+                if (similarity > best) {
+                    best = similarity;
+                    current = neighbour;
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    // Beam search on one layer, returns up to ef candidates ordered by decreasing similarity
+    private List<Candidate> searchLayer(VectorStorage.Scorer scorer, int start, int ef, int level) {
+        BitSet visited = new BitSet(nodes.size());
+        PriorityQueue<Candidate> frontier = new PriorityQueue<>(Comparator.comparingDouble(Candidate::similarity).reversed());
+        PriorityQueue<Candidate> results = new PriorityQueue<>(Comparator.comparingDouble(Candidate::similarity));
+
+        Candidate first = new Candidate(start, scorer.similarity(start));
+        visited.set(start);
+        frontier.add(first);
+        results.add(first);
+
+        while (!frontier.isEmpty()) {
+            Candidate closest = frontier.poll();
+            if (results.size() >= ef && closest.similarity() < results.peek().similarity()) {
+                break;
+            }
+            Node node = nodes.get(closest.id());
+            if (level > node.level) {
+                continue;
+            }
+            for (int i = 0; i < node.count[level]; i++) {
+                int neighbour = node.links[level][i];
+                if (visited.get(neighbour)) {
+                    continue;
+                }
+                visited.set(neighbour);
+                double similarity = scorer.similarity(neighbour);
+                if (results.size() < ef || similarity > results.peek().similarity()) {
+                    Candidate candidate = new Candidate(neighbour, similarity);
+                    frontier.add(candidate);
+                    results.add(candidate);
+                    if (results.size() > ef) {
+                        results.poll();
+                    }
+                }
+            }
+        }
+
+        List<Candidate> ordered = new ArrayList<>(results);
+        ordered.sort(Comparator.comparingDouble(Candidate::similarity).reversed());
+        return ordered;
+    }
+
+    private void rebuildIfMostlyDeleted() {
+        if (deletedCount > 1000 && deletedCount > nodeIds.size()) {
+            rebuild();
+        }
+    }
+
+    private void rebuild() {
+        Map<String, float[]> live = new LinkedHashMap<>();
+        for (int id = 0; id < nodes.size(); id++) {
+            if (!nodes.get(id).deleted) {
+                live.put(nodes.get(id).key, fullVector(id));
+            }
+        }
+        nodes.clear();
+        nodeIds.clear();
+        vectors = null;
+        fullPrecision = null;
+        entryPoint = -1;
+        maxLevel = -1;
+        deletedCount = 0;
+        live.forEach(this::insert);
+    }
+
+    // Quantized vectors are re-encoded from their decoded form when there is no full precision copy
+    private float[] fullVector(int id) {
+        return fullPrecision != null ? fullPrecision.get(id) : vectors.decode(id);
+    }
+
+    private static List<Neighbour> sortedDescending(PriorityQueue<Neighbour> results) {
+        List<Neighbour> ordered = new ArrayList<>(results);
+        ordered.sort(Comparator.comparingDouble(Neighbour::similarity).reversed());
+        return ordered;
+    }
+
+    static float[] normalized(float[] vector) {
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        norm = Math.sqrt(norm);
+        float[] result = new float[vector.length];
+        if (norm == 0) {
+            return result;
+        }
+        for (int i = 0; i < vector.length; i++) {
+            result[i] = (float) (vector[i] / norm);
+        }
+        return result;
+    }
+
+    private static final class Node {
+
+        private final String key;
+        private final int level;
+        private final int[][] links;
+        private final int[] count;
+        private boolean deleted;
+
+        Node(String key, int level, int m, int maxNeighboursLayerZero) {
+            this.key = key;
+            this.level = level;
+            this.links = new int[level + 1][];
+            this.count = new int[level + 1];
+            for (int l = 0; l <= level; l++) {
+                links[l] = new int[l == 0 ? maxNeighboursLayerZero : m];
+            }
+        }
+
+        void link(int level, int neighbour) {
+            links[level][count[level]++] = neighbour;
+        }
+    }
+
+    private record Candidate(int id, double similarity) {}
+
+    public record Neighbour(String key, double similarity) {}
+}
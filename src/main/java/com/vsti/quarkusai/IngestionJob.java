@@ -0,0 +1,150 @@
+package com.vsti.quarkusai;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class IngestionJob implements DocumentProcessingService.IngestionProgress {
+
+    public enum Stage {
+        QUEUED, PARSING, PARSED, CHUNKED, EMBEDDED, STORED, FAILED
+    }
+
+    private final String id;
+    private final String filename;
+    private final String contentType;
+    private final long size;
+    private final Path file;
+    private final Instant submittedAt = Instant.now();
+
+    private volatile Stage stage = Stage.QUEUED;
+    private final AtomicInteger totalChunks = new AtomicInteger();
+    private volatile boolean parsed;
+    private volatile boolean unchanged;
+    private final AtomicInteger embeddedChunks = new AtomicInteger();
+    private final AtomicInteger storedChunks = new AtomicInteger();
+    private volatile Instant startedAt;
+    private volatile Instant completedAt;
+    private volatile DocumentMetadata document;
+    private volatile String error;
+
+    IngestionJob(String id, String filename, String contentType, long size, Path file) {
+        this.id = id;
+        this.filename = filename;
+        this.contentType = contentType;
+        this.size = size;
+        this.file = file;
+    }
+
+    public String id() {
+        return id;
+    }
+
+    public String filename() {
+        return filename;
+    }
+
+    public String contentType() {
+        return contentType;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    Path file() {
+        return file;
+    }
+
+    public Stage stage() {
+        Stage current = stage;
+        if (current != Stage.PARSING) {
+            return current;
+        }
+
+        // Parsing, chunking and embedding overlap, so report the furthest stage all chunks have reached
+        if (!parsed) {
+            return Stage.PARSING;
+        }
+        if (totalChunks.get() == 0) {
+            return Stage.PARSED;
+        }
+        return embeddedChunks.get() < totalChunks.get() ? Stage.CHUNKED : Stage.EMBEDDED;
+    }
+
+    public boolean isFinished() {
+        return stage == Stage.STORED || stage == Stage.FAILED;
+    }
+
+    void started() {
+        startedAt = Instant.now();
+        stage = Stage.PARSING;
+    }
+
+    @Override
+    public void onUnchanged() {
+        unchanged = true;
+    }
+
+    @Override
+    public void onParsed() {
+        parsed = true;
+    }
+
+    @Override
+    public void onChunked(int chunks) {
+        totalChunks.addAndGet(chunks);
+    }
+
+    @Override
+    public void onEmbedded(int chunks) {
+        embeddedChunks.addAndGet(chunks);
+    }
+
+    @Override
+    public void onStored(int chunks) {
+        storedChunks.addAndGet(chunks);
+    }
+
+    void completed(DocumentMetadata metadata) {
+        document = metadata;
+        completedAt = Instant.now();
+        stage = Stage.STORED;
+    }
+
+    void failed(String message) {
+        error = message;
+        completedAt = Instant.now();
+        stage = Stage.FAILED;
+    }
+
+    Instant completedAt() {
+        return completedAt;
+    }
+
+    long processingMillis() {
+        Instant start = startedAt;
+        Instant end = completedAt;
+        return start == null || end == null ? 0 : end.toEpochMilli() - start.toEpochMilli();
+    }
+
+    public Status status() {
+        return new Status(id, filename, stage(), unchanged, totalChunks.get(), embeddedChunks.get(), storedChunks.get(),
+            submittedAt, startedAt, completedAt, document, error);
+    }
+
+    public record Status(
+        String jobId,
+        String filename,
+        Stage stage,
+        boolean unchanged,
+        int totalChunks,
+        int embeddedChunks,
+        int storedChunks,
+        Instant submittedAt,
+        Instant startedAt,
+        Instant completedAt,
+        DocumentMetadata document,
+        String error
+    ) {}
+}
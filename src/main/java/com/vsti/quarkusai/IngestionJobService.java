@@ -0,0 +1,181 @@
+package com.vsti.quarkusai;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+@ApplicationScoped
+public class IngestionJobService {
+
+    @Inject
+    DocumentProcessingService documentService;
+
+    @ConfigProperty(name = "ingestion.workers", defaultValue = "2")
+    int workers;
+
+    @ConfigProperty(name = "ingestion.queue-capacity", defaultValue = "20")
+    int queueCapacity;
+
+    @ConfigProperty(name = "ingestion.job-retention", defaultValue = "PT1H")
+    Duration jobRetention;
+
+    private final ConcurrentMap<String, IngestionJob> jobs = new ConcurrentHashMap<>();
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong processedBytes = new AtomicLong();
+    private final AtomicLong processingMillis = new AtomicLong();
+    private ThreadPoolExecutor executor;
+
+    public IngestionJobService() {
+    }
+
+    IngestionJobService(DocumentProcessingService documentService, int workers, int queueCapacity, Duration jobRetention) {
+        this.documentService = documentService;
+        this.workers = workers;
+        this.queueCapacity = queueCapacity;
+        this.jobRetention = jobRetention;
+        start();
+    }
+
+    @PostConstruct
+    void start() {
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            runnable -> {
+                Thread thread = new Thread(runnable, "ingestion-worker-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            },
+            new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    void stop() {
+        executor.shutdownNow();
+    }
+
+    public IngestionJob submit(String filename, String contentType, InputStream inputStream) throws IOException {
+        purgeFinishedJobs();
+
+        // The request stream is gone once the HTTP call returns, so spool the upload to disk first
+        Path file = Files.createTempFile("ingestion-", ".upload");
+        try (inputStream) {
+            Files.copy(inputStream, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            // An aborted upload or a full disk must not leave the partial spool file behind
+            Files.deleteIfExists(file);
+            throw e;
+        }
+
+        IngestionJob job = new IngestionJob(UUID.randomUUID().toString(), filename, contentType, Files.size(file), file);
+        jobs.put(job.id(), job);
+        try {
+            executor.execute(() -> run(job));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.id());
+            Files.deleteIfExists(file);
+            rejected.incrementAndGet();
+            throw new QueueFullException("Ingestion queue is full (" + queueCapacity + " pending jobs), try again later");
+        }
+        submitted.incrementAndGet();
+        return job;
+    }
+
+    public Optional<IngestionJob> getJob(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId));
+    }
+
+    public List<IngestionJob.Status> getJobs() {
+        return jobs.values().stream()
+            .map(IngestionJob::status)
+            .sorted(Comparator.comparing(IngestionJob.Status::submittedAt).reversed())
+            .toList();
+    }
+
+    public Stats stats() {
+        long finished = completed.get() + failed.get();
+        long millis = processingMillis.get();
+        return new Stats(
+            executor.getQueue().size(),
+            queueCapacity,
+            executor.getActiveCount(),
+            workers,
+            submitted.get(),
+            completed.get(),
+            failed.get(),
+            rejected.get(),
+            finished == 0 ? 0 : millis / finished,
+            millis == 0 ? 0.0 : processedBytes.get() * 1000.0 / millis
+        );
+    }
+
+    private void run(IngestionJob job) {
+        job.started();
+        try {
+            DocumentMetadata metadata = documentService.processDocument(
+                job.filename(), job.contentType(), job.file(), job);
+            job.completed(metadata);
+            completed.incrementAndGet();
+            processedBytes.addAndGet(job.size());
+        } catch (Exception e) {
+            job.failed("Failed to process " + job.filename() + ": " + e.getMessage());
+            failed.incrementAndGet();
+        } finally {
+            processingMillis.addAndGet(job.processingMillis());
+            try {
+                Files.deleteIfExists(job.file());
+            } catch (IOException e) {
+                System.out.println("Could not delete spooled upload " + job.file() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void purgeFinishedJobs() {
+        Instant cutoff = Instant.now().minus(jobRetention);
+        jobs.values().removeIf(job -> job.isFinished() && job.completedAt().isBefore(cutoff));
+    }
+
+    public static class QueueFullException extends RuntimeException {
+        public QueueFullException(String message) {
+            super(message);
+        }
+    }
+
+    public record Stats(
+        int queueDepth,
+        int queueCapacity,
+        int activeWorkers,
+        int workers,
+        long submitted,
+        long completed,
+        long failed,
+        long rejected,
+        long averageProcessingMs,
+        double bytesPerSecond
+    ) {}
+}
@@ -0,0 +1,278 @@
+package com.vsti.quarkusai;
+
+import dev.langchain4j.data.segment.TextSegment;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+// BM25 inverted index over all stored chunks. Chunks get increasing ordinals, so each posting
+// list is kept as delta and varint encoded (ordinal, term frequency) pairs in a byte array.
+// Removed chunks are skipped at query time until they outnumber the live ones, then the
+// postings are rebuilt.
+@ApplicationScoped
+public class LexicalIndex {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final int MAX_TOKEN_LENGTH = 64;
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Set<String> STOP_WORDS = Set.of(
+        "a", "an", "and", "are", "as", "at", "be", "by", "can", "do", "does", "for", "from", "how", "i", "in",
+        "is", "it", "me", "my", "of", "on", "or", "the", "to", "was", "what", "when", "where", "which", "who",
+        "why", "with", "you", "der", "die", "das", "und", "ist", "ein", "eine", "wie", "wo", "mit", "von",
+        "zu", "den", "im", "fur", "für", "auf", "ich");
+
+    @ConfigProperty(name = "rag.lexical.enabled", defaultValue = "true")
+    boolean enabled;
+
+    @ConfigProperty(name = "rag.lexical.confident-score", defaultValue = "8.0")
+    double confidentScore;
+
+    @ConfigProperty(name = "rag.lexical.confident-margin", defaultValue = "1.5")
+    double confidentMargin;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Postings> postings = new HashMap<>();
+    private final Map<String, Integer> ordinals = new HashMap<>();
+    private final List<Chunk> chunks = new ArrayList<>();
+    private long totalLength;
+    private int removedChunks;
+
+    public LexicalIndex() {
+    }
+
+    LexicalIndex(double confidentScore, double confidentMargin) {
+        this.enabled = true;
+        this.confidentScore = confidentScore;
+        this.confidentMargin = confidentMargin;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Segments need documentId and filename metadata; segments that are already indexed are skipped
+    public void addAll(List<String> segmentIds, List<TextSegment> segments) {
+        if (!enabled) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < segmentIds.size(); i++) {
+                TextSegment segment = segments.get(i);
+                index(new Chunk(segmentIds.get(i), segment.metadata().getString("documentId"),
+                    segment.metadata().getString("filename"), segment.text()));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeAll(Collection<String> segmentIds) {
+        if (!enabled || segmentIds.isEmpty()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            for (String segmentId : segmentIds) {
+                Integer ordinal = ordinals.remove(segmentId);
+                if (ordinal != null) {
+                    totalLength -= chunks.get(ordinal).length();
+                    chunks.set(ordinal, null);
+                    removedChunks++;
+                }
+            }
+            if (removedChunks > 1000 && removedChunks > ordinals.size()) {
+                rebuild();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public List<Hit> search(String query, int maxResults) {
+        if (!enabled) {
+            return List.of();
+        }
+        List<String> terms = List.copyOf(new LinkedHashSet<>(tokenize(query)));
+        if (terms.isEmpty()) {
+            return List.of();
+        }
+
+        lock.readLock().lock();
+        try {
+            int liveChunks = ordinals.size();
+            if (liveChunks == 0) {
+                return List.of();
+            }
+            double averageLength = (double) totalLength / liveChunks;
+
+            Map<Integer, double[]> scores = new HashMap<>();
+            for (String term : terms) {
+                Postings termPostings = postings.get(term);
+                if (termPostings == null) {
+                    continue;
+                }
+                double idf = Math.log(1 + (liveChunks - termPostings.documentFrequency + 0.5) / (termPostings.documentFrequency + 0.5));
+                termPostings.forEach((ordinal, frequency) -> {
+                    Chunk chunk = chunks.get(ordinal);
+                    if (chunk == null) {
+                        return;
+                    }
+                    double norm = K1 * (1 - B + B * chunk.length() / averageLength);
+                    double[] score = scores.computeIfAbsent(ordinal, k -> new double[2]);
+                    score[0] += idf * frequency * (K1 + 1) / (frequency + norm);
+                    score[1]++;
+                });
+            }
+
+            return scores.entrySet().stream()
+                .sorted((a, b) -> Double.compare(b.getValue()[0], a.getValue()[0]))
+                .limit(maxResults)
+                .map(entry -> {
+                    Chunk chunk = chunks.get(entry.getKey());
+                    double[] score = entry.getValue();
+                    return new Hit(chunk.segmentId(), chunk.documentId(), chunk.filename(), chunk.text(),
+                        score[0], score[1] / terms.size());
+                })
+                .toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // A clear winner containing every query term, typically an exact product code or error number
+    public boolean isConfident(List<Hit> hits) {
+        if (hits.isEmpty()) {
+            return false;
+        }
+        Hit top = hits.get(0);
+        boolean clearWinner = hits.size() == 1 || top.score() >= confidentMargin * hits.get(1).score();
+        return top.coverage() >= 1.0 && top.score() >= confidentScore && clearWinner;
+    }
+
+    public Stats stats() {
+        lock.readLock().lock();
+        try {
+            long postingBytes = postings.values().stream().mapToLong(termPostings -> termPostings.size).sum();
+            return new Stats(enabled, ordinals.size(), postings.size(), postingBytes, removedChunks);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    static List<String> tokenize(String text) {
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        return Arrays.stream(SEPARATORS.split(normalized))
+            .filter(token -> !token.isEmpty() && token.length() <= MAX_TOKEN_LENGTH && !STOP_WORDS.contains(token))
+            .toList();
+    }
+
+    private void index(Chunk chunk) {
+        if (ordinals.containsKey(chunk.segmentId())) {
+            return;
+        }
+        List<String> tokens = tokenize(chunk.text());
+        Chunk indexed = new Chunk(chunk.segmentId(), chunk.documentId(), chunk.filename(), chunk.text(), tokens.size());
+        int ordinal = chunks.size();
+        chunks.add(indexed);
+        ordinals.put(chunk.segmentId(), ordinal);
+        totalLength += tokens.size();
+
+        Map<String, Integer> frequencies = new LinkedHashMap<>();
+        tokens.forEach(token -> frequencies.merge(token, 1, Integer::sum));
+        frequencies.forEach((term, frequency) ->
+            postings.computeIfAbsent(term, k -> new Postings()).add(ordinal, frequency));
+    }
+
+    private void rebuild() {
+        List<Chunk> live = chunks.stream().filter(Objects::nonNull).toList();
+        postings.clear();
+        ordinals.clear();
+        chunks.clear();
+        totalLength = 0;
+        removedChunks = 0;
+        live.forEach(this::index);
+    }
+
+    private record Chunk(String segmentId, String documentId, String filename, String text, int length) {
+        Chunk(String segmentId, String documentId, String filename, String text) {
+            this(segmentId, documentId, filename, text, 0);
+        }
+    }
+
+    private static final class Postings {
+
+        private byte[] data = new byte[8];
+        private int size;
+        private int lastOrdinal;
+        private int documentFrequency;
+
+        void add(int ordinal, int frequency) {
+            writeVarint(ordinal - lastOrdinal);
+            writeVarint(frequency);
+            lastOrdinal = ordinal;
+            documentFrequency++;
+        }
+
+        void forEach(PostingConsumer consumer) {
+            int position = 0;
+            int ordinal = 0;
+            while (position < size) {
+                int delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data[position++];
+                    delta |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while ((b & 0x80) != 0);
+                int frequency = 0;
+                shift = 0;
+                do {
+                    b = data[position++];
+                    frequency |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while ((b & 0x80) != 0);
+                ordinal += delta;
+                consumer.accept(ordinal, frequency);
+            }
+        }
+
+        private void writeVarint(int value) {
+            if (size + 5 > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            while ((value & ~0x7F) != 0) {
+                data[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[size++] = (byte) value;
+        }
+    }
+
+    @FunctionalInterface
+    private interface PostingConsumer {
+        void accept(int ordinal, int frequency);
+    }
+
+    // Coverage is the share of query terms that occur in the chunk
+    public record Hit(String segmentId, String documentId, String filename, String text, double score, double coverage) {}
+
+    public record Stats(boolean enabled, int chunks, int terms, long postingBytes, int removedChunks) {}
+}
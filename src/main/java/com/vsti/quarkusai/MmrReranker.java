@@ -0,0 +1,123 @@
+package com.vsti.quarkusai;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.util.Arrays;
+
+// Maximal marginal relevance over a wide candidate set: each pick maximizes
+// lambda * relevance - (1 - lambda) * highest similarity to the chunks already picked, and a
+// document contributes at most maxPerDocument chunks. Neighbouring chunks of one section are
+// nearly identical vectors, so after the first of them the others lose against other sections.
+@ApplicationScoped
+public class MmrReranker {
+
+    @ConfigProperty(name = "rag.mmr.enabled", defaultValue = "false")
+    boolean enabled;
+
+    @ConfigProperty(name = "rag.mmr.candidates", defaultValue = "20")
+    int candidates;
+
+    // Same scale as the store scores, 0.82 is the threshold of the plain vector search
+    @ConfigProperty(name = "rag.mmr.min-score", defaultValue = "0.75")
+    double minScore;
+
+    @ConfigProperty(name = "rag.mmr.k", defaultValue = "3")
+    int k;
+
+    @ConfigProperty(name = "rag.mmr.lambda", defaultValue = "0.7")
+    double lambda;
+
+    @ConfigProperty(name = "rag.mmr.max-per-document", defaultValue = "2")
+    int maxPerDocument;
+
+    public MmrReranker() {
+    }
+
+    MmrReranker(int k, double lambda, int maxPerDocument) {
+        this.enabled = true;
+        this.k = k;
+        this.lambda = lambda;
+        this.maxPerDocument = maxPerDocument;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int candidates() {
+        return candidates;
+    }
+
+    public double minScore() {
+        return minScore;
+    }
+
+    public int k() {
+        return k;
+    }
+
+    // Indexes of the picked candidates in pick order. Relevance is the cosine similarity to the
+    // query; a candidate without vector counts as unlike every other one. Only a few small arrays
+    // are allocated, the cost is k passes over the candidates with one dot product each.
+    public int[] select(float[][] vectors, double[] relevance, String[] documentIds) {
+        int n = relevance.length;
+        int limit = Math.min(k, n);
+        double[] norms = new double[n];
+        for (int i = 0; i < n; i++) {
+            norms[i] = vectors[i] == null ? 0 : Math.sqrt(VectorStorage.dot(vectors[i], vectors[i], 0, vectors[i].length));
+        }
+        // Highest similarity to any picked candidate, -1 while nothing is picked
+        double[] redundancy = new double[n];
+        Arrays.fill(redundancy, -1);
+        boolean[] picked = new boolean[n];
+        int[] order = new int[limit];
+        int count = 0;
+
+        while (count < limit) {
+            int best = -1;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < n; i++) {
+                if (picked[i] || isCapped(documentIds[i], documentIds, order, count)) {
+                    continue;
+                }
+                double score = lambda * relevance[i] - (1 - lambda) * redundancy[i];
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = i;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            picked[best] = true;
+            order[count++] = best;
+            for (int i = 0; i < n; i++) {
+                if (!picked[i]) {
+                    redundancy[i] = Math.max(redundancy[i], cosine(vectors, norms, i, best));
+                }
+            }
+        }
+        return count == limit ? order : Arrays.copyOf(order, count);
+    }
+
+    private boolean isCapped(String documentId, String[] documentIds, int[] order, int count) {
+        if (documentId == null) {
+            return false;
+        }
+        int sameDocument = 0;
+        for (int i = 0; i < count; i++) {
+            if (documentId.equals(documentIds[order[i]])) {
+                sameDocument++;
+            }
+        }
+        return sameDocument >= maxPerDocument;
+    }
+
+    private static double cosine(float[][] vectors, double[] norms, int a, int b) {
+        if (norms[a] == 0 || norms[b] == 0 || vectors[a].length != vectors[b].length) {
+            return -1;
+        }
+        return VectorStorage.dot(vectors[a], vectors[b], 0, vectors[a].length) / (norms[a] * norms[b]);
+    }
+}
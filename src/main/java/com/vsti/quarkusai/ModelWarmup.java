@@ -0,0 +1,153 @@
+package com.vsti.quarkusai;
+
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import io.quarkus.runtime.StartupEvent;
+import io.vertx.core.Vertx;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.health.HealthCheck;
+import org.eclipse.microprofile.health.HealthCheckResponse;
+import org.eclipse.microprofile.health.Readiness;
+
+import java.time.Duration;
+import java.time.LocalTime;
+import java.util.function.Supplier;
+
+// Ollama loads a model on its first request and unloads it after a few idle minutes, so the first
+// question after a pause waits seconds for llama3.2 and nomic-embed-text to load. Both models are
+// loaded right after startup, readiness stays down until then, and during the keep-alive hours
+// they are pinged often enough not to be unloaded.
+@Readiness
+@ApplicationScoped
+public class ModelWarmup implements HealthCheck {
+
+    private static final String PING_PROMPT = "Reply with OK.";
+    private static final String PING_TEXT = "warm-up";
+
+    @Inject
+    ChatAiService aiService;
+
+    @Inject
+    EmbeddingModel embeddingModel;
+
+    @Inject
+    OllamaAdmission admission;
+
+    @Inject
+    Vertx vertx;
+
+    @ConfigProperty(name = "ollama.warmup.enabled", defaultValue = "true")
+    boolean enabled;
+
+    @ConfigProperty(name = "ollama.keep-alive.enabled", defaultValue = "true")
+    boolean keepAliveEnabled;
+
+    // Local time, a window ending before it starts spans midnight
+    @ConfigProperty(name = "ollama.keep-alive.hours", defaultValue = "07:00-19:00")
+    String keepAliveHours;
+
+    @ConfigProperty(name = "ollama.keep-alive.interval", defaultValue = "PT4M")
+    Duration keepAliveInterval;
+
+    private volatile boolean finished;
+    private volatile String result = "pending";
+    private volatile boolean stopped;
+    private volatile long keepAliveTimer = -1;
+
+    void onStart(@Observes StartupEvent event) {
+        if (!enabled) {
+            finished = true;
+            result = "disabled";
+            return;
+        }
+        Thread.ofPlatform().daemon().name("model-warmup").start(() -> {
+            warmUp();
+            if (keepAliveEnabled) {
+                scheduleKeepAlive();
+            }
+        });
+    }
+
+    // A Vert.x timer goes away with this bean, the pings themselves block and run on a worker thread
+    private synchronized void scheduleKeepAlive() {
+        if (stopped) {
+            return;
+        }
+        keepAliveTimer = vertx.setPeriodic(Math.max(1, keepAliveInterval.toMillis()),
+            id -> vertx.executeBlocking(() -> {
+                keepAlive();
+                return null;
+            }));
+    }
+
+    @PreDestroy
+    synchronized void stop() {
+        stopped = true;
+        if (keepAliveTimer >= 0) {
+            vertx.cancelTimer(keepAliveTimer);
+        }
+    }
+
+    // The second call of each model shows what requests cost once it is loaded
+    void warmUp() {
+        try {
+            long embeddingCold = time(() -> embeddingModel.embed(PING_TEXT));
+            long embeddingWarm = time(() -> embeddingModel.embed(PING_TEXT));
+            long chatCold = time(() -> aiService.chat(PING_PROMPT));
+            long chatWarm = time(() -> aiService.chat(PING_PROMPT));
+            result = "embedding model cold " + embeddingCold + " ms, warm " + embeddingWarm + " ms, chat model cold "
+                + chatCold + " ms, warm " + chatWarm + " ms";
+            System.out.println("Warmed up Ollama models: " + result);
+        } catch (Exception e) {
+            // Not ready forever would only hide the app, the first requests load the models instead
+            result = "failed: " + e.getMessage();
+            System.out.println("Model warm-up failed: " + e.getMessage());
+        } finally {
+            finished = true;
+        }
+    }
+
+    void keepAlive() {
+        if (!withinHours(keepAliveHours, LocalTime.now())) {
+            return;
+        }
+        try {
+            // Requests in flight keep a model loaded by themselves
+            if (admission.embedding().active() == 0) {
+                admission.embedding().call(() -> embeddingModel.embed(PING_TEXT));
+            }
+            if (admission.generation().active() == 0) {
+                admission.generation().call(() -> aiService.chat(PING_PROMPT));
+            }
+        } catch (Exception e) {
+            System.out.println("Model keep-alive failed: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public HealthCheckResponse call() {
+        return HealthCheckResponse.named("ollama-models")
+            .status(finished)
+            .withData("warmup", result)
+            .build();
+    }
+
+    static boolean withinHours(String hours, LocalTime time) {
+        String[] bounds = hours.split("-");
+        LocalTime from = LocalTime.parse(bounds[0].trim());
+        LocalTime to = LocalTime.parse(bounds[1].trim());
+        if (from.isBefore(to)) {
+            return !time.isBefore(from) && time.isBefore(to);
+        }
+        return !time.isBefore(from) || time.isBefore(to);
+    }
+
+    private static long time(Supplier<?> call) {
+        long startedAt = System.nanoTime();
+        call.get();
+        return (System.nanoTime() - startedAt) / 1_000_000;
+    }
+}
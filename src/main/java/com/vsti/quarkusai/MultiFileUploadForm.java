@@ -1,18 +1,21 @@
 package com.vsti.quarkusai;
 
 import jakarta.ws.rs.FormParam;
+import org.jboss.resteasy.reactive.multipart.FileUpload;
 
-import java.io.InputStream;
 import java.util.List;
 
 public class MultiFileUploadForm {
 
+    // Uploaded parts are buffered to disk by Quarkus, so each file is read from its own temp file
     @FormParam("files")
-    public List<InputStream> files;
+    public List<FileUpload> files;
 
+    // Optional, overrides the part's file name at the same position
     @FormParam("fileNames")
     public List<String> fileNames;
 
+    // Optional, overrides the part's content type at the same position
     @FormParam("contentTypes")
     public List<String> contentTypes;
 }
@@ -0,0 +1,57 @@
+package com.vsti.quarkusai;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.time.Duration;
+
+// Admission control for chat requests towards Ollama, which only serves a few generations in
+// parallel. Generation and query embedding get separate bulkheads so short embedding calls are
+// not stuck behind long generations. Ingestion keeps its own limit, see EmbeddingPipeline.
+@ApplicationScoped
+public class OllamaAdmission {
+
+    @Inject
+    RagMetrics metrics;
+
+    @ConfigProperty(name = "ollama.admission.generation.limit", defaultValue = "2")
+    int generationLimit;
+
+    @ConfigProperty(name = "ollama.admission.generation.queue", defaultValue = "16")
+    int generationQueue;
+
+    @ConfigProperty(name = "ollama.admission.generation.max-wait", defaultValue = "PT30S")
+    Duration generationMaxWait;
+
+    @ConfigProperty(name = "ollama.admission.embedding.limit", defaultValue = "4")
+    int embeddingLimit;
+
+    @ConfigProperty(name = "ollama.admission.embedding.queue", defaultValue = "64")
+    int embeddingQueue;
+
+    @ConfigProperty(name = "ollama.admission.embedding.max-wait", defaultValue = "PT10S")
+    Duration embeddingMaxWait;
+
+    private Bulkhead generation;
+    private Bulkhead embedding;
+
+    @PostConstruct
+    void start() {
+        generation = new Bulkhead("generation", generationLimit, generationQueue, generationMaxWait,
+            reason -> metrics.admissionRejected("generation", reason));
+        embedding = new Bulkhead("embedding", embeddingLimit, embeddingQueue, embeddingMaxWait,
+            reason -> metrics.admissionRejected("embedding", reason));
+        metrics.bulkhead(generation);
+        metrics.bulkhead(embedding);
+    }
+
+    public Bulkhead generation() {
+        return generation;
+    }
+
+    public Bulkhead embedding() {
+        return embedding;
+    }
+}
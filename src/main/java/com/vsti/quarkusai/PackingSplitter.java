@@ -0,0 +1,104 @@
+package com.vsti.quarkusai;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.text.BreakIterator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Packs whole sentences or words into chunks of at most maxTokens estimated tokens. The next chunk
+// starts with the trailing units of the previous one, up to overlapTokens. Sentences longer than a
+// chunk are packed word by word, words longer than a chunk are cut.
+final class PackingSplitter implements DocumentSplitter {
+
+    enum Unit { WORD, SENTENCE }
+
+    private static final Pattern WORD = Pattern.compile("\\S+\\s*");
+
+    private final Unit unit;
+    private final int maxTokens;
+    private final int overlapTokens;
+
+    PackingSplitter(Unit unit, int maxTokens, int overlapTokens) {
+        if (maxTokens <= 0 || overlapTokens < 0 || overlapTokens >= maxTokens) {
+            throw new IllegalArgumentException("Expected 0 <= overlap < max tokens but got " + overlapTokens + " and " + maxTokens);
+        }
+        this.unit = unit;
+        this.maxTokens = maxTokens;
+        this.overlapTokens = overlapTokens;
+    }
+
+    @Override
+    public List<TextSegment> split(Document document) {
+        List<TextSegment> segments = new ArrayList<>();
+        List<String> current = new ArrayList<>();
+        int tokens = 0;
+        for (String next : units(document.text())) {
+            int nextTokens = ContextAssembler.estimateTokens(next);
+            if (tokens + nextTokens > maxTokens && !current.isEmpty()) {
+                add(segments, current);
+                // Keep trailing units as overlap, but never the whole chunk and only as much as leaves room for the next unit
+                int keep = 0;
+                int kept = 0;
+                for (int i = current.size() - 1; i > 0; i--) {
+                    int unitTokens = ContextAssembler.estimateTokens(current.get(i));
+                    if (kept + unitTokens > overlapTokens || kept + unitTokens + nextTokens > maxTokens) {
+                        break;
+                    }
+                    kept += unitTokens;
+                    keep++;
+                }
+                current = new ArrayList<>(current.subList(current.size() - keep, current.size()));
+                tokens = kept;
+            }
+            current.add(next);
+            tokens += nextTokens;
+        }
+        add(segments, current);
+        return segments;
+    }
+
+    private List<String> units(String text) {
+        if (unit == Unit.WORD) {
+            return words(text);
+        }
+        List<String> units = new ArrayList<>();
+        BreakIterator sentences = BreakIterator.getSentenceInstance(Locale.ROOT);
+        sentences.setText(text);
+        for (int start = sentences.first(), end = sentences.next(); end != BreakIterator.DONE; start = end, end = sentences.next()) {
+            String sentence = text.substring(start, end);
+            if (ContextAssembler.estimateTokens(sentence) > maxTokens) {
+                units.addAll(words(sentence));
+            } else {
+                units.add(sentence);
+            }
+        }
+        return units;
+    }
+
+    // Words keep their trailing whitespace so joining units restores the text
+    private List<String> words(String text) {
+        int maxChars = maxTokens * 4;
+        List<String> words = new ArrayList<>();
+        Matcher matcher = WORD.matcher(text);
+        while (matcher.find()) {
+            String word = matcher.group();
+            for (int start = 0; start < word.length(); start += maxChars) {
+                words.add(word.substring(start, Math.min(word.length(), start + maxChars)));
+            }
+        }
+        return words;
+    }
+
+    private static void add(List<TextSegment> segments, List<String> units) {
+        String text = String.join("", units).strip();
+        if (!text.isEmpty()) {
+            segments.add(TextSegment.from(text));
+        }
+    }
+}
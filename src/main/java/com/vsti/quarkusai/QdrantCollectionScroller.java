@@ -0,0 +1,101 @@
+package com.vsti.quarkusai;
+
+import io.qdrant.client.QdrantClient;
+import io.qdrant.client.QdrantGrpcClient;
+import io.qdrant.client.WithPayloadSelectorFactory;
+import io.qdrant.client.WithVectorsSelectorFactory;
+import io.qdrant.client.grpc.JsonWithInt;
+import io.qdrant.client.grpc.Points;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+// Pages through every point of the Qdrant collection. The EmbeddingStore abstraction only
+// offers similarity search, which can't enumerate a collection reliably.
+@ApplicationScoped
+public class QdrantCollectionScroller {
+
+    @ConfigProperty(name = "quarkus.langchain4j.qdrant.host", defaultValue = "localhost")
+    String host;
+
+    @ConfigProperty(name = "quarkus.langchain4j.qdrant.port", defaultValue = "6334")
+    int port;
+
+    @ConfigProperty(name = "quarkus.langchain4j.qdrant.use-tls", defaultValue = "false")
+    boolean useTls;
+
+    @ConfigProperty(name = "quarkus.langchain4j.qdrant.api-key")
+    Optional<String> apiKey;
+
+    @ConfigProperty(name = "quarkus.langchain4j.qdrant.collection.name", defaultValue = "documents")
+    String collectionName;
+
+    @ConfigProperty(name = "catalog.reconcile.page-size", defaultValue = "256")
+    int pageSize;
+
+    public long scroll(Consumer<ScrolledPoint> consumer) throws Exception {
+        return scroll(false, consumer);
+    }
+
+    // With vectors each page is a lot larger, only the local ANN index needs them
+    public long scroll(boolean withVectors, Consumer<ScrolledPoint> consumer) throws Exception {
+        QdrantGrpcClient.Builder grpcClient = QdrantGrpcClient.newBuilder(host, port, useTls);
+        apiKey.ifPresent(grpcClient::withApiKey);
+
+        long count = 0;
+        try (QdrantClient client = new QdrantClient(grpcClient.build())) {
+            Points.PointId offset = null;
+            do {
+                Points.ScrollPoints.Builder request = Points.ScrollPoints.newBuilder()
+                    .setCollectionName(collectionName)
+                    .setLimit(pageSize)
+                    .setWithPayload(WithPayloadSelectorFactory.enable(true))
+                    .setWithVectors(WithVectorsSelectorFactory.enable(withVectors));
+                if (offset != null) {
+                    request.setOffset(offset);
+                }
+
+                Points.ScrollResponse response = client.scrollAsync(request.build()).get();
+                for (Points.RetrievedPoint point : response.getResultList()) {
+                    float[] vector = withVectors ? vector(point.getVectors().getVector().getDataList()) : null;
+                    consumer.accept(new ScrolledPoint(pointId(point.getId()), stringPayload(point.getPayloadMap()), vector));
+                    count++;
+                }
+                offset = response.hasNextPageOffset() ? response.getNextPageOffset() : null;
+            } while (offset != null);
+        }
+        return count;
+    }
+
+    private static String pointId(Points.PointId id) {
+        return id.getPointIdOptionsCase() == Points.PointId.PointIdOptionsCase.UUID
+            ? id.getUuid()
+            : String.valueOf(id.getNum());
+    }
+
+    private static float[] vector(List<Float> data) {
+        float[] vector = new float[data.size()];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = data.get(i);
+        }
+        return vector;
+    }
+
+    private static Map<String, String> stringPayload(Map<String, JsonWithInt.Value> payload) {
+        Map<String, String> values = new HashMap<>();
+        payload.forEach((key, value) -> {
+            if (value.getKindCase() == JsonWithInt.Value.KindCase.STRING_VALUE) {
+                values.put(key, value.getStringValue());
+            }
+        });
+        return values;
+    }
+
+    // Vector is null unless the scroll asked for vectors
+    public record ScrolledPoint(String id, Map<String, String> payload, float[] vector) {}
+}
@@ -0,0 +1,119 @@
+package com.vsti.quarkusai;
+
+import dev.langchain4j.data.embedding.Embedding;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+@ApplicationScoped
+public class QueryEmbeddingCache {
+
+    @ConfigProperty(name = "rag.embedding-cache.max-size", defaultValue = "1000")
+    int maxSize;
+
+    @ConfigProperty(name = "rag.embedding-cache.ttl", defaultValue = "PT1H")
+    Duration ttl;
+
+    // Only reported in the stats, switching models takes a restart which starts with an empty cache
+    @ConfigProperty(name = "quarkus.langchain4j.ollama.embedding-model.model-name", defaultValue = "nomic-embed-text")
+    String modelName;
+
+    private final LongSupplier clock;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public QueryEmbeddingCache() {
+        this.clock = System::currentTimeMillis;
+    }
+
+    QueryEmbeddingCache(int maxSize, Duration ttl, String modelName, LongSupplier clock) {
+        this.maxSize = maxSize;
+        this.ttl = ttl;
+        this.modelName = modelName;
+        this.clock = clock;
+    }
+
+    public Embedding get(String text, Supplier<Embedding> loader) {
+        String key = normalize(text);
+        long now = clock.getAsLong();
+
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.isValidAt(now)) {
+                hits++;
+                return entry.embedding();
+            }
+            if (entry != null) {
+                // Expired
+                entries.remove(key);
+                evictions++;
+            }
+            misses++;
+        }
+
+        // Call the model outside the lock so slow embeddings don't block cache hits
+        Embedding embedding = loader.get();
+        put(key, embedding, now);
+        return embedding;
+    }
+
+    public synchronized void invalidateAll() {
+        evictions += entries.size();
+        entries.clear();
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(entries.size(), maxSize, hits, misses, evictions, modelName);
+    }
+
+    static String normalize(String text) {
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC);
+        return normalized.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    private synchronized void put(String key, Embedding embedding, long now) {
+        entries.put(key, new Entry(embedding, now + ttl.toMillis()));
+
+        // Drop expired entries first, then the least recently used ones
+        if (entries.size() > maxSize) {
+            Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext() && entries.size() > maxSize) {
+                if (!iterator.next().getValue().isValidAt(now)) {
+                    iterator.remove();
+                    evictions++;
+                }
+            }
+            iterator = entries.entrySet().iterator();
+            while (iterator.hasNext() && entries.size() > maxSize) {
+                iterator.next();
+                iterator.remove();
+                evictions++;
+            }
+        }
+    }
+
+    private record Entry(Embedding embedding, long expiresAt) {
+
+        boolean isValidAt(long now) {
+            return now < expiresAt;
+        }
+    }
+
+    public record Stats(int size, int maxSize, long hits, long misses, long evictions, String modelName) {
+
+        public double hitRate() {
+            long requests = hits + misses;
+            return requests == 0 ? 0.0 : (double) hits / requests;
+        }
+    }
+}
@@ -6,69 +6,280 @@ import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.store.embedding.EmbeddingMatch;
 import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
 import dev.langchain4j.store.embedding.EmbeddingStore;
+import io.micrometer.core.instrument.Timer;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @ApplicationScoped
 public class RagChatService {
 
-    @Inject
-    ChatAiService aiService;
-
     @Inject
     EmbeddingModel embeddingModel;
 
     @Inject
+    @Replicated
     EmbeddingStore<TextSegment> embeddingStore;
 
-    public ChatResponse chat(String userMessage) {
+    @Inject
+    QueryEmbeddingCache embeddingCache;
+
+    @Inject
+    SemanticAnswerCache answerCache;
+
+    @Inject
+    RagMetrics metrics;
+
+    @Inject
+    LexicalIndex lexicalIndex;
+
+    @Inject
+    ContextAssembler contextAssembler;
+
+    @Inject
+    OllamaAdmission admission;
+
+    @Inject
+    MmrReranker mmr;
+
+    @ConfigProperty(name = "rag.hybrid.candidates", defaultValue = "10")
+    int hybridCandidates;
+
+    @ConfigProperty(name = "rag.hybrid.vector-min-score", defaultValue = "0.6")
+    double hybridVectorMinScore;
+
+    @ConfigProperty(name = "rag.hybrid.rrf-k", defaultValue = "60")
+    int rrfK;
+
+    // Everything before generation: a cached answer, or the context to generate one from. Answers
+    // that depend on more than the question are neither looked up in nor added to the answer cache.
+    Prepared prepare(String userMessage, Timer.Sample request, boolean cacheable) {
+        long cacheVersion = answerCache.version();
+
+        Embedding queryEmbedding = null;
+        Optional<ChatResponse> cached = Optional.empty();
+        RetrievedContext retrieved = null;
+        String outcome = "answered";
         try {
-            // Generate embedding for user query
-            Embedding queryEmbedding = embeddingModel.embed(userMessage).content();
-            
+            List<LexicalIndex.Hit> lexicalHits = searchLexically(userMessage);
+            if (lexicalIndex.isConfident(lexicalHits)) {
+                retrieved = lexicalContext(userMessage, lexicalHits);
+                outcome = "lexical";
+            } else {
+                queryEmbedding = embedQuery(userMessage);
+                cached = cacheable ? answerCache.lookup(queryEmbedding) : Optional.empty();
+                if (cached.isEmpty()) {
+                    retrieved = retrieve(userMessage, queryEmbedding, lexicalHits);
+                }
+            }
+        } catch (Bulkhead.RejectedException e) {
+            metrics.chatCompleted(request, "rejected");
+            throw e;
+        } catch (Exception e) {
+            // If embedding or vector search fails, fall back to streaming without context
+            metrics.fallback();
+            queryEmbedding = null;
+            retrieved = new RetrievedContext(userMessage, "", List.of(), Set.of());
+            outcome = "fallback";
+        }
+        return new Prepared(cached.orElse(null), retrieved, cacheable ? queryEmbedding : null, outcome, cacheVersion);
+    }
+
+    void replayCached(ChatResponse cached, StreamHandler handler, long startedAt, Timer.Sample request) {
+        handler.onSources(cached.sources());
+        handler.onToken(cached.response());
+        long now = System.nanoTime();
+        metrics.chatCompleted(request, "cached");
+        handler.onComplete(StreamStats.of(startedAt, now, now, 1));
+    }
+
+    Bulkhead.Permit acquireGeneration(Timer.Sample request) {
+        try {
+            return admission.generation().acquire();
+        } catch (Bulkhead.RejectedException e) {
+            metrics.chatCompleted(request, "rejected");
+            throw e;
+        }
+    }
+
+    // Caches the generated answer and records the request once the last token arrived
+    ChatResponse completed(Prepared prepared, String aiResponse, Timer.Sample request) {
+        RetrievedContext context = prepared.context();
+        List<String> sources = contextWasUsed(aiResponse, context.context()) ? context.sources() : List.of();
+        ChatResponse response = new ChatResponse(aiResponse, sources);
+        if (prepared.cacheKey() != null) {
+            answerCache.put(prepared.cacheKey(), response, context.documentIds(), prepared.cacheVersion());
+        }
+        metrics.chatCompleted(request, prepared.outcome());
+        return response;
+    }
+
+    private Embedding embedQuery(String userMessage) {
+        // Generate embedding for user query, reusing it for repeated questions
+        return embeddingCache.get(userMessage, () -> admission.embedding().call(
+            () -> metrics.time(RagMetrics.ChatStage.EMBED, () -> embeddingModel.embed(userMessage).content())));
+    }
+
+    private List<LexicalIndex.Hit> searchLexically(String userMessage) {
+        if (!lexicalIndex.isEnabled()) {
+            return List.of();
+        }
+        return metrics.time(RagMetrics.ChatStage.LEXICAL, () -> lexicalIndex.search(userMessage, hybridCandidates));
+    }
+
+    private RetrievedContext lexicalContext(String userMessage, List<LexicalIndex.Hit> lexicalHits) {
+        List<ContextAssembler.Chunk> chunks = lexicalHits.stream()
+            .filter(hit -> hit.coverage() >= 1.0)
+            .limit(3)
+            .map(RagChatService::chunk)
+            .toList();
+        return assemble(userMessage, chunks);
+    }
+
+    private RetrievedContext retrieve(String userMessage, Embedding queryEmbedding, List<LexicalIndex.Hit> lexicalHits) {
+        if (!lexicalIndex.isEnabled() && mmr.isEnabled()) {
+            // A wide candidate set, re-ranked so the chunks don't all repeat the same section
+            List<EmbeddingMatch<TextSegment>> matches = searchVectors(queryEmbedding, mmr.candidates(), mmr.minScore());
+            List<ContextAssembler.Chunk> relevantMatches = diversify(matches).stream()
+                .map(RagChatService::chunk)
+                .toList();
+            metrics.matchesFound(relevantMatches.size(), matches.stream().mapToDouble(EmbeddingMatch::score).toArray());
+            return assemble(userMessage, relevantMatches);
+        }
+        if (!lexicalIndex.isEnabled()) {
             // Search for relevant documents with stricter parameters
-            List<EmbeddingMatch<TextSegment>> matches = embeddingStore.search(EmbeddingSearchRequest.builder()
-                    .queryEmbedding(queryEmbedding)
-                    .maxResults(3)
-                    .minScore(0.82)
-                    .build()).matches();
-            
+            List<EmbeddingMatch<TextSegment>> matches = searchVectors(queryEmbedding, 3, 0.82);
+
             // Only use matches that actually meet our threshold
-            List<EmbeddingMatch<TextSegment>> relevantMatches = matches.stream()
+            List<ContextAssembler.Chunk> relevantMatches = matches.stream()
                 .filter(match -> match.score() >= 0.82)
+                .map(RagChatService::chunk)
                 .toList();
-            
-            // Build context from relevant documents
-            String context = relevantMatches.stream()
-                .map(match -> match.embedded().text())
-                .collect(Collectors.joining("\n\n"));
-            
+            metrics.matchesFound(relevantMatches.size(), matches.stream().mapToDouble(EmbeddingMatch::score).toArray());
+            return assemble(userMessage, relevantMatches);
+        }
+
+        // Cast a wider net than the 0.82 threshold, lexical agreement decides which weaker matches count
+        int vectorCandidates = mmr.isEnabled() ? Math.max(hybridCandidates, mmr.candidates()) : hybridCandidates;
+        double strongScore = mmr.isEnabled() ? mmr.minScore() : 0.82;
+        List<EmbeddingMatch<TextSegment>> matches = searchVectors(queryEmbedding, vectorCandidates, hybridVectorMinScore);
+        Set<String> lexicalIds = lexicalHits.stream().map(LexicalIndex.Hit::segmentId).collect(Collectors.toSet());
+        Set<String> vectorIds = matches.stream().map(EmbeddingMatch::embeddingId).collect(Collectors.toSet());
+
+        Map<String, ContextAssembler.Chunk> candidates = new LinkedHashMap<>();
+        List<EmbeddingMatch<TextSegment>> accepted = new ArrayList<>();
+        for (EmbeddingMatch<TextSegment> match : matches) {
+            if (match.score() >= strongScore || lexicalIds.contains(match.embeddingId())) {
+                candidates.putIfAbsent(match.embeddingId(), chunk(match));
+                accepted.add(match);
+            }
+        }
+        List<EmbeddingMatch<TextSegment>> ranked = mmr.isEnabled() ? diversify(accepted) : accepted;
+        List<String> vectorRanking = ranked.stream().map(EmbeddingMatch::embeddingId).toList();
+        // Chunks the re-ranker left out as repetitions must not come back through the lexical ranking
+        Set<String> redundant = accepted.stream()
+            .map(EmbeddingMatch::embeddingId)
+            .filter(id -> !vectorRanking.contains(id))
+            .collect(Collectors.toSet());
+
+        // Lexical-only hits need every query term, so a single common word can't pull a chunk in
+        List<String> lexicalRanking = new ArrayList<>();
+        for (LexicalIndex.Hit hit : lexicalHits) {
+            if (redundant.contains(hit.segmentId())) {
+                continue;
+            }
+            if (hit.coverage() >= 1.0 || vectorIds.contains(hit.segmentId())) {
+                candidates.putIfAbsent(hit.segmentId(), chunk(hit));
+                lexicalRanking.add(hit.segmentId());
+            }
+        }
+
+        List<ContextAssembler.Chunk> relevantMatches = reciprocalRankFusion(List.of(vectorRanking, lexicalRanking), rrfK).stream()
+            .limit(mmr.isEnabled() ? mmr.k() : 3)
+            .map(candidates::get)
+            .toList();
+        metrics.matchesFound(relevantMatches.size(), matches.stream().mapToDouble(EmbeddingMatch::score).toArray());
+        return assemble(userMessage, relevantMatches);
+    }
+
+    private List<EmbeddingMatch<TextSegment>> searchVectors(Embedding queryEmbedding, int maxResults, double minScore) {
+        return metrics.time(RagMetrics.ChatStage.SEARCH,
+            () -> embeddingStore.search(EmbeddingSearchRequest.builder()
+                .queryEmbedding(queryEmbedding)
+                .maxResults(maxResults)
+                .minScore(minScore)
+                .build()).matches());
+    }
+
+    // Picks up to k matches by maximal marginal relevance, in pick order
+    private List<EmbeddingMatch<TextSegment>> diversify(List<EmbeddingMatch<TextSegment>> matches) {
+        return metrics.time(RagMetrics.ChatStage.RERANK, () -> {
+            int n = matches.size();
+            float[][] vectors = new float[n][];
+            double[] relevance = new double[n];
+            String[] documentIds = new String[n];
+            for (int i = 0; i < n; i++) {
+                EmbeddingMatch<TextSegment> match = matches.get(i);
+                vectors[i] = match.embedding() == null ? null : match.embedding().vector();
+                // Store scores are cosine similarity mapped to [0, 1]
+                relevance[i] = 2 * match.score() - 1;
+                documentIds[i] = match.embedded() == null ? null : match.embedded().metadata().getString("documentId");
+            }
+            List<EmbeddingMatch<TextSegment>> picked = new ArrayList<>();
+            for (int index : mmr.select(vectors, relevance, documentIds)) {
+                picked.add(matches.get(index));
+            }
+            return picked;
+        });
+    }
+
+    private RetrievedContext assemble(String userMessage, List<ContextAssembler.Chunk> relevantMatches) {
+        return metrics.time(RagMetrics.ChatStage.PROMPT, () -> {
+            // Merge overlapping chunks, drop repeated text and stay within the token budget
+            ContextAssembler.Assembly assembly = contextAssembler.assemble(relevantMatches);
+            metrics.contextAssembled(assembly.tokens(), assembly.savedTokens());
+
+            List<String> sources = assembly.chunks().stream()
+                .map(ContextAssembler.Chunk::filename)
+                .distinct()
+                .collect(Collectors.toList());
+
+            Set<String> documentIds = assembly.chunks().stream()
+                .map(ContextAssembler.Chunk::documentId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+
             // Create enhanced prompt with context
-            String enhancedPrompt = buildPromptWithContext(userMessage, context);
-            
-            // Get AI response
-            String aiResponse = aiService.chat(enhancedPrompt);
-            
-            // Only show sources if we have highly relevant matches AND the AI actually used them
-            List<String> sources = relevantMatches.isEmpty() || !contextWasUsed(aiResponse, context) ? 
-                List.of() : 
-                relevantMatches.stream()
-                    .map(match -> match.embedded().metadata().getString("filename"))
-                    .distinct()
-                    .collect(Collectors.toList());
-            
-            return new ChatResponse(aiResponse, sources);
-        } catch (Exception e) {
-            // If embedding or vector search fails, fall back to regular chat
-            String aiResponse = aiService.chat(userMessage);
-            return new ChatResponse(aiResponse, List.of());
+            String prompt = buildPromptWithContext(userMessage, assembly.context());
+            return new RetrievedContext(prompt, assembly.context(), sources, documentIds);
+        });
+    }
+
+    // Orders ids by the sum of 1 / (k + rank) over all rankings they appear in
+    static List<String> reciprocalRankFusion(List<List<String>> rankings, int k) {
+        Map<String, Double> scores = new LinkedHashMap<>();
+        for (List<String> ranking : rankings) {
+            for (int rank = 0; rank < ranking.size(); rank++) {
+                scores.merge(ranking.get(rank), 1.0 / (k + rank + 1), Double::sum);
+            }
         }
+        return scores.entrySet().stream()
+            .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
+            .map(Map.Entry::getKey)
+            .toList();
     }
 
-    private String buildPromptWithContext(String userMessage, String context) {
+    String buildPromptWithContext(String userMessage, String context) {
         if (context.isEmpty()) {
             return userMessage;
         }
@@ -85,11 +296,21 @@ public class RagChatService {
             Answer:""", context, userMessage);
     }
     
-    private boolean contextWasUsed(String aiResponse, String context) {
+    // The question of a prompt built by buildPromptWithContext, the prompt itself otherwise
+    static String questionOf(String prompt) {
+        int start = prompt.lastIndexOf("\nQuestion: ");
+        int end = prompt.lastIndexOf("\n\nAnswer:");
+        if (start < 0 || end < start) {
+            return prompt;
+        }
+        return prompt.substring(start + "\nQuestion: ".length(), end);
+    }
+
+    boolean contextWasUsed(String aiResponse, String context) {
         if (context.isEmpty()) {
             return false;
         }
-        
+
         // Check if the AI response indicates it couldn't find relevant information
         String lowerResponse = aiResponse.toLowerCase();
         return !lowerResponse.contains("doesn't contain relevant information") &&
@@ -100,4 +321,43 @@ public class RagChatService {
     }
 
     public record ChatResponse(String response, List<String> sources) {}
+
+    private static ContextAssembler.Chunk chunk(EmbeddingMatch<TextSegment> match) {
+        return new ContextAssembler.Chunk(match.embedded().text(), match.embedded().metadata().getString("filename"),
+            match.embedded().metadata().getString("documentId"));
+    }
+
+    private static ContextAssembler.Chunk chunk(LexicalIndex.Hit hit) {
+        return new ContextAssembler.Chunk(hit.text(), hit.filename(), hit.documentId());
+    }
+
+    record RetrievedContext(String prompt, String context, List<String> sources, Set<String> documentIds) {}
+
+    // Either cached is set, or context holds the prompt to generate from
+    record Prepared(ChatResponse cached, RetrievedContext context, Embedding cacheKey, String outcome, long cacheVersion) {}
+
+    public interface StreamHandler {
+        void onSources(List<String> sources);
+        void onToken(String token);
+        void onComplete(StreamStats stats);
+        void onError(Throwable error);
+    }
+
+    public record StreamStats(long timeToFirstTokenMs, long totalMs, int tokenCount) {
+
+        static StreamStats of(long startedAt, long firstTokenAt, long completedAt, int tokenCount) {
+            long timeToFirstToken = firstTokenAt == 0 ? completedAt - startedAt : firstTokenAt - startedAt;
+            return new StreamStats(timeToFirstToken / 1_000_000, (completedAt - startedAt) / 1_000_000, tokenCount);
+        }
+
+        public double tokensPerSecond() {
+            long generationMs = totalMs - timeToFirstTokenMs;
+            return generationMs <= 0 ? tokenCount : tokenCount * 1000.0 / generationMs;
+        }
+
+        public String toJson() {
+            return String.format(Locale.ROOT, "{\"timeToFirstTokenMs\":%d,\"totalMs\":%d,\"tokens\":%d,\"tokensPerSecond\":%.1f}",
+                timeToFirstTokenMs, totalMs, tokenCount, tokensPerSecond());
+        }
+    }
 }
@@ -0,0 +1,212 @@
+package com.vsti.quarkusai;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// Timers and distributions for each stage of chat and ingestion, published with percentile
+// histograms on /q/metrics so latency can be broken down per stage and aggregated across instances
+@Singleton
+public class RagMetrics {
+
+    public enum ChatStage { LEXICAL, EMBED, SEARCH, RERANK, PROMPT, LLM }
+
+    public enum IngestionStage { PARSE, SPLIT, EMBED, STORE }
+
+    private static final double[] PERCENTILES = {0.5, 0.95, 0.99};
+
+    private final MeterRegistry registry;
+    private final Map<ChatStage, Timer> chatStages = new EnumMap<>(ChatStage.class);
+    private final Map<IngestionStage, Timer> ingestionStages = new EnumMap<>(IngestionStage.class);
+    private final Map<ChunkingService.Strategy, DistributionSummary> chunkTokens = new EnumMap<>(ChunkingService.Strategy.class);
+    private final DistributionSummary matches;
+    private final DistributionSummary matchScores;
+    private final Counter fallbacks;
+    private final Counter coalesced;
+    private final Counter cancelled;
+    private final DistributionSummary contextTokens;
+    private final DistributionSummary contextTokensSaved;
+    private final DistributionSummary chunksPerDocument;
+    private final DistributionSummary bytesPerDocument;
+
+    @Inject
+    public RagMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        for (ChatStage stage : ChatStage.values()) {
+            chatStages.put(stage, timer("rag.chat.stage.duration", "Time spent in one stage of a chat request", stage));
+        }
+        for (IngestionStage stage : IngestionStage.values()) {
+            ingestionStages.put(stage, timer("rag.ingestion.stage.duration", "Time spent in one stage of document ingestion", stage));
+        }
+        for (ChunkingService.Strategy strategy : ChunkingService.Strategy.values()) {
+            chunkTokens.put(strategy, DistributionSummary.builder("rag.ingestion.chunk.tokens")
+                .description("Estimated tokens of each chunk, by chunking strategy")
+                .tag("strategy", strategy.name().toLowerCase(Locale.ROOT))
+                .publishPercentiles(PERCENTILES)
+                .publishPercentileHistogram()
+                .register(registry));
+        }
+        matches = DistributionSummary.builder("rag.chat.matches")
+            .description("Relevant segments found per chat request")
+            .serviceLevelObjectives(0, 1, 2, 3)
+            .register(registry);
+        matchScores = DistributionSummary.builder("rag.chat.match.score")
+            .description("Similarity score of each segment returned by the vector search")
+            .serviceLevelObjectives(0.5, 0.6, 0.7, 0.8, 0.82, 0.85, 0.9, 0.95)
+            .register(registry);
+        fallbacks = Counter.builder("rag.chat.fallbacks")
+            .description("Chat requests answered without retrieval because embedding or search failed")
+            .register(registry);
+        coalesced = Counter.builder("rag.chat.coalesced")
+            .description("Chat requests served by the pipeline run of an identical request already in flight")
+            .register(registry);
+        cancelled = Counter.builder("rag.chat.cancelled")
+            .description("Streamed answers whose generation was stopped because every client had disconnected")
+            .register(registry);
+        contextTokens = DistributionSummary.builder("rag.context.tokens")
+            .description("Estimated tokens of the context put into the prompt")
+            .publishPercentiles(PERCENTILES)
+            .publishPercentileHistogram()
+            .register(registry);
+        contextTokensSaved = DistributionSummary.builder("rag.context.tokens.saved")
+            .description("Estimated tokens removed from the context by merging, deduplication and the token budget")
+            .publishPercentiles(PERCENTILES)
+            .publishPercentileHistogram()
+            .register(registry);
+        chunksPerDocument = DistributionSummary.builder("rag.ingestion.chunks")
+            .description("Chunks per ingested document")
+            .publishPercentiles(PERCENTILES)
+            .publishPercentileHistogram()
+            .register(registry);
+        bytesPerDocument = DistributionSummary.builder("rag.ingestion.bytes")
+            .description("Size of each ingested document")
+            .baseUnit("bytes")
+            .publishPercentiles(PERCENTILES)
+            .publishPercentileHistogram()
+            .register(registry);
+    }
+
+    public <T> T time(ChatStage stage, Supplier<T> action) {
+        return chatStages.get(stage).record(action);
+    }
+
+    public void record(ChatStage stage, long nanos) {
+        chatStages.get(stage).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public <T> T time(IngestionStage stage, Supplier<T> action) {
+        return ingestionStages.get(stage).record(action);
+    }
+
+    public void record(IngestionStage stage, long nanos) {
+        ingestionStages.get(stage).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public Timer.Sample start() {
+        return Timer.start(registry);
+    }
+
+    // Outcome is answered, lexical, cached, fallback, rejected or cancelled
+    public void chatCompleted(Timer.Sample sample, String outcome) {
+        sample.stop(outcomeTimer("rag.chat.duration", "End-to-end time of a chat request", outcome));
+    }
+
+    public void matchesFound(int count, double[] scores) {
+        matches.record(count);
+        for (double score : scores) {
+            matchScores.record(score);
+        }
+    }
+
+    public void fallback() {
+        fallbacks.increment();
+    }
+
+    public void bulkhead(Bulkhead bulkhead) {
+        Gauge.builder("rag.admission.active", bulkhead, Bulkhead::active)
+            .description("Calls holding a permit of the bulkhead")
+            .tag("bulkhead", bulkhead.name())
+            .register(registry);
+        Gauge.builder("rag.admission.waiting", bulkhead, Bulkhead::waiting)
+            .description("Calls queued for a permit of the bulkhead")
+            .tag("bulkhead", bulkhead.name())
+            .register(registry);
+    }
+
+    public void chatMemory(ConversationMemoryStore store) {
+        Gauge.builder("rag.memory.sessions", store, memory -> memory.stats().sessions())
+            .description("Conversations held in chat memory")
+            .register(registry);
+        Gauge.builder("rag.memory.tokens", store, memory -> memory.stats().tokens())
+            .description("Estimated tokens of all messages held in chat memory")
+            .register(registry);
+    }
+
+    // Reason is queue full, timeout or interrupted
+    public void admissionRejected(String bulkhead, String reason) {
+        Counter.builder("rag.admission.rejected")
+            .description("Calls rejected by a bulkhead")
+            .tag("bulkhead", bulkhead)
+            .tag("reason", reason)
+            .register(registry)
+            .increment();
+    }
+
+    public void chatCoalesced() {
+        coalesced.increment();
+    }
+
+    public void generationCancelled() {
+        cancelled.increment();
+    }
+
+    public void contextAssembled(int tokens, int savedTokens) {
+        contextTokens.record(tokens);
+        contextTokensSaved.record(savedTokens);
+    }
+
+    // Outcome is stored, unchanged or failed
+    public void ingestionCompleted(Timer.Sample sample, String outcome) {
+        sample.stop(outcomeTimer("rag.ingestion.duration", "End-to-end time of ingesting one document", outcome));
+    }
+
+    public void documentIngested(int chunks, long bytes) {
+        chunksPerDocument.record(chunks);
+        if (bytes >= 0) {
+            bytesPerDocument.record(bytes);
+        }
+    }
+
+    public void chunkTokens(ChunkingService.Strategy strategy, int tokens) {
+        chunkTokens.get(strategy).record(tokens);
+    }
+
+    private Timer timer(String name, String description, Enum<?> stage) {
+        return Timer.builder(name)
+            .description(description)
+            .tag("stage", stage.name().toLowerCase(Locale.ROOT))
+            .publishPercentiles(PERCENTILES)
+            .publishPercentileHistogram()
+            .register(registry);
+    }
+
+    private Timer outcomeTimer(String name, String description, String outcome) {
+        // Registration is idempotent, the registry returns the existing timer for the same tags
+        return Timer.builder(name)
+            .description(description)
+            .tag("outcome", outcome)
+            .publishPercentiles(PERCENTILES)
+            .publishPercentileHistogram()
+            .register(registry);
+    }
+}
@@ -0,0 +1,272 @@
+package com.vsti.quarkusai;
+
+import io.micrometer.core.instrument.Timer;
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.subscription.Cancellable;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+// Answers chat requests on the event loop around the retrieval in RagChatService. Generation is a Multi
+// of tokens from the Ollama client and needs no thread while it waits. Query embedding, vector
+// search and waiting for an admission permit are blocking calls in langchain4j and the bulkheads,
+// they run on virtual threads so neither I/O nor worker threads are held by them.
+@ApplicationScoped
+public class ReactiveRagChatService {
+
+    @Inject
+    RagChatService ragChatService;
+
+    @Inject
+    StreamingChatAiService streamingAiService;
+
+    @Inject
+    ConversationAiService conversationAiService;
+
+    @Inject
+    ConversationMemoryStore memory;
+
+    @Inject
+    RagMetrics metrics;
+
+    @ConfigProperty(name = "rag.single-flight.enabled", defaultValue = "true")
+    boolean singleFlight;
+
+    private final ExecutorService blockingCalls = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<String, CompletableFuture<RagChatService.ChatResponse>> inFlightChats = new ConcurrentHashMap<>();
+    private final Map<String, StreamBroadcast> inFlightStreams = new ConcurrentHashMap<>();
+
+    @PreDestroy
+    void stop() {
+        blockingCalls.close();
+    }
+
+    // Follow-up questions are answered with the earlier turns of the session. They bypass
+    // single-flight and the answer cache, their answer depends on more than the question.
+    public Uni<RagChatService.ChatResponse> chat(String sessionId, String userMessage) {
+        if (sessionId != null && memory.hasHistory(sessionId)) {
+            return answer(sessionId, userMessage);
+        }
+        Uni<RagChatService.ChatResponse> response = singleFlight ? coalesced(userMessage) : answer(null, userMessage);
+        if (sessionId == null) {
+            return response;
+        }
+        // A first question may be answered from the cache or by another request, the session records it either way
+        return response.invoke(answered -> memory.remember(sessionId, userMessage, answered.response()));
+    }
+
+    // Cancelling the returned handle stops the handler's events. The generation is cancelled as
+    // well, and its permit released, unless other requests are subscribed to the same answer.
+    public Cancellable chatStream(String sessionId, String userMessage, RagChatService.StreamHandler handler) {
+        if (sessionId != null && memory.hasHistory(sessionId)) {
+            return stream(sessionId, userMessage, handler);
+        }
+        return chatStream(userMessage, sessionId == null ? handler : remembering(sessionId, userMessage, handler));
+    }
+
+    private Uni<RagChatService.ChatResponse> coalesced(String userMessage) {
+        String key = QueryEmbeddingCache.normalize(userMessage);
+        CompletableFuture<RagChatService.ChatResponse> started = new CompletableFuture<>();
+        CompletableFuture<RagChatService.ChatResponse> running = inFlightChats.putIfAbsent(key, started);
+        if (running != null) {
+            metrics.chatCoalesced();
+            return Uni.createFrom().completionStage(running);
+        }
+        // Subscribed here rather than by the caller, a cancelled caller must not cancel the others
+        answer(null, userMessage)
+            .onTermination().invoke(() -> inFlightChats.remove(key, started))
+            .subscribe().with(started::complete, started::completeExceptionally);
+        return Uni.createFrom().completionStage(started);
+    }
+
+    public Cancellable chatStream(String userMessage, RagChatService.StreamHandler handler) {
+        if (!singleFlight) {
+            return stream(null, userMessage, handler);
+        }
+        String key = QueryEmbeddingCache.normalize(userMessage);
+        while (true) {
+            StreamBroadcast running = inFlightStreams.get(key);
+            if (running == null) {
+                StreamBroadcast broadcast = new StreamBroadcast(handler, finished -> inFlightStreams.remove(key, finished));
+                if (inFlightStreams.putIfAbsent(key, broadcast) == null) {
+                    broadcast.onAbandoned(stream(null, userMessage, broadcast)::cancel);
+                    return () -> broadcast.leave(handler);
+                }
+            } else if (running.join(handler)) {
+                metrics.chatCoalesced();
+                return () -> running.leave(handler);
+            } else {
+                // Completed but not yet unregistered
+                inFlightStreams.remove(key, running);
+            }
+        }
+    }
+
+    // Without a session the answer depends on the question alone and may be cached
+    private Uni<RagChatService.ChatResponse> answer(String sessionId, String userMessage) {
+        Timer.Sample request = metrics.start();
+        return offload(() -> ragChatService.prepare(userMessage, request, sessionId == null))
+            .chain(prepared -> {
+                if (prepared.cached() != null) {
+                    metrics.chatCompleted(request, "cached");
+                    return Uni.createFrom().item(prepared.cached());
+                }
+                return admit(request)
+                    .onItem().transformToMulti(permit -> tokens(sessionId, prepared.context().prompt(), permit))
+                    .collect().with(Collectors.joining())
+                    .map(aiResponse -> ragChatService.completed(prepared, aiResponse, request));
+            });
+    }
+
+    private Generation stream(String sessionId, String userMessage, RagChatService.StreamHandler handler) {
+        long startedAt = System.nanoTime();
+        Timer.Sample request = metrics.start();
+        Generation generation = new Generation();
+        offload(() -> ragChatService.prepare(userMessage, request, sessionId == null))
+            .subscribe().with(prepared -> generate(sessionId, prepared, request, handler, startedAt, generation),
+                handler::onError);
+        return generation;
+    }
+
+    private void generate(String sessionId, RagChatService.Prepared prepared, Timer.Sample request,
+                          RagChatService.StreamHandler handler, long startedAt, Generation generation) {
+        if (generation.isCancelled()) {
+            cancelled(request);
+            return;
+        }
+        if (prepared.cached() != null) {
+            ragChatService.replayCached(prepared.cached(), handler, startedAt, request);
+            return;
+        }
+        StringBuilder answer = new StringBuilder();
+        AtomicLong firstTokenAt = new AtomicLong();
+        AtomicInteger tokenCount = new AtomicInteger();
+        admit(request)
+            .onItem().transformToMulti(permit -> {
+                if (generation.isCancelled()) {
+                    // Abandoned while waiting, the permit goes straight to the next request
+                    permit.close();
+                    cancelled(request);
+                    return Multi.createFrom().<String>failure(new CancellationException());
+                }
+                // Rejection happens before anything was sent, the sources follow the permit
+                handler.onSources(prepared.context().sources());
+                return tokens(sessionId, prepared.context().prompt(), permit)
+                    .onCancellation().invoke(() -> cancelled(request))
+                    .onSubscription().invoke(generation::started);
+            })
+            .subscribe().with(
+                token -> {
+                    firstTokenAt.compareAndSet(0, System.nanoTime());
+                    tokenCount.incrementAndGet();
+                    answer.append(token);
+                    handler.onToken(token);
+                },
+                error -> {
+                    if (!(error instanceof CancellationException)) {
+                        handler.onError(error);
+                    }
+                },
+                () -> {
+                    ragChatService.completed(prepared, answer.toString(), request);
+                    handler.onComplete(RagChatService.StreamStats.of(startedAt, firstTokenAt.get(), System.nanoTime(),
+                        tokenCount.get()));
+                });
+    }
+
+    private void cancelled(Timer.Sample request) {
+        metrics.generationCancelled();
+        metrics.chatCompleted(request, "cancelled");
+    }
+
+    // Waiting for a permit is not part of the LLM stage timing
+    private Uni<Bulkhead.Permit> admit(Timer.Sample request) {
+        return offload(() -> ragChatService.acquireGeneration(request));
+    }
+
+    // The permit is held until the last token or until the subscriber goes away
+    private Multi<String> tokens(String sessionId, String prompt, Bulkhead.Permit permit) {
+        return Multi.createFrom().deferred(() -> {
+            long generationStartedAt = System.nanoTime();
+            Multi<String> generation = sessionId == null
+                ? streamingAiService.tokens(prompt)
+                : conversationAiService.tokens(sessionId, prompt);
+            return generation
+                .onCompletion().invoke(() -> metrics.record(RagMetrics.ChatStage.LLM, System.nanoTime() - generationStartedAt));
+        }).onTermination().invoke(permit::close);
+    }
+
+    private RagChatService.StreamHandler remembering(String sessionId, String userMessage,
+                                                     RagChatService.StreamHandler handler) {
+        StringBuilder answer = new StringBuilder();
+        return new RagChatService.StreamHandler() {
+            @Override
+            public void onSources(List<String> sources) {
+                handler.onSources(sources);
+            }
+
+            @Override
+            public void onToken(String token) {
+                answer.append(token);
+                handler.onToken(token);
+            }
+
+            @Override
+            public void onComplete(RagChatService.StreamStats stats) {
+                memory.remember(sessionId, userMessage, answer.toString());
+                handler.onComplete(stats);
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                handler.onError(error);
+            }
+        };
+    }
+
+    // Steps that are still waiting notice the flag, a running token stream is cancelled right away
+    private static final class Generation implements Cancellable {
+
+        private volatile boolean cancelled;
+        private volatile Flow.Subscription tokens;
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            Flow.Subscription subscription = tokens;
+            if (subscription != null) {
+                subscription.cancel();
+            }
+        }
+
+        boolean isCancelled() {
+            return cancelled;
+        }
+
+        void started(Flow.Subscription subscription) {
+            tokens = subscription;
+            if (cancelled) {
+                subscription.cancel();
+            }
+        }
+    }
+
+    private <T> Uni<T> offload(Supplier<T> blockingCall) {
+        return Uni.createFrom().item(blockingCall).runSubscriptionOn(blockingCalls);
+    }
+}
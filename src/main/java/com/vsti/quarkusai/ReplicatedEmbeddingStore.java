@@ -0,0 +1,320 @@
+package com.vsti.quarkusai;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.filter.Filter;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+// Embedding store with an in-process HNSW index as a read replica of the Qdrant collection.
+// In read-through mode writes go to Qdrant and the replica, and searches are answered locally
+// once the replica has been loaded from the collection; until then they go to Qdrant. In
+// standalone mode Qdrant is not used at all and the index only lives as long as the process.
+@ApplicationScoped
+@Replicated
+public class ReplicatedEmbeddingStore implements EmbeddingStore<TextSegment> {
+
+    public enum Mode { OFF, READ_THROUGH, STANDALONE }
+
+    @Inject
+    EmbeddingStore<TextSegment> qdrant;
+
+    @Inject
+    QdrantCollectionScroller scroller;
+
+    @ConfigProperty(name = "rag.ann.mode", defaultValue = "off")
+    Mode mode;
+
+    @ConfigProperty(name = "rag.ann.m", defaultValue = "16")
+    int m;
+
+    @ConfigProperty(name = "rag.ann.ef-construction", defaultValue = "100")
+    int efConstruction;
+
+    @ConfigProperty(name = "rag.ann.ef-search", defaultValue = "64")
+    int efSearch;
+
+    @ConfigProperty(name = "rag.ann.quantization", defaultValue = "none")
+    VectorStorage.Quantization quantization;
+
+    @ConfigProperty(name = "rag.ann.rescore", defaultValue = "true")
+    boolean rescore;
+
+    private HnswIndex index;
+    private final Map<String, TextSegment> segments = new ConcurrentHashMap<>();
+    // Removals while the replica loads, so the loader doesn't bring back deleted points
+    private final Set<String> removedWhileLoading = ConcurrentHashMap.newKeySet();
+    private volatile boolean loading;
+    private volatile boolean ready;
+
+    public ReplicatedEmbeddingStore() {
+    }
+
+    ReplicatedEmbeddingStore(Mode mode, EmbeddingStore<TextSegment> qdrant, int m, int efConstruction, int efSearch,
+                             VectorStorage.Quantization quantization, boolean rescore) {
+        this.mode = mode;
+        this.qdrant = qdrant;
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        this.quantization = quantization;
+        this.rescore = rescore;
+        initialize();
+    }
+
+    @PostConstruct
+    void initialize() {
+        if (mode == Mode.OFF) {
+            return;
+        }
+        index = new HnswIndex(m, efConstruction, quantization, rescore, 42);
+        if (mode == Mode.STANDALONE) {
+            ready = true;
+        } else if (scroller != null) {
+            loading = true;
+            Thread.ofPlatform().daemon().name("ann-index-loader").start(() -> {
+                try {
+                    load();
+                } catch (Exception e) {
+                    System.err.println("Failed to load ANN index, searches stay on Qdrant: " + e.getMessage());
+                } finally {
+                    loading = false;
+                    removedWhileLoading.clear();
+                }
+            });
+        }
+    }
+
+    void load() throws Exception {
+        long startedAt = System.nanoTime();
+        long points = scroller.scroll(true, point -> {
+            String text = point.payload().get("text_segment");
+            if (text == null || point.vector() == null) {
+                return;
+            }
+            Metadata metadata = new Metadata();
+            point.payload().forEach((key, value) -> {
+                if (!key.equals("text_segment")) {
+                    metadata.put(key, value);
+                }
+            });
+            synchronized (this) {
+                if (!removedWhileLoading.contains(point.id())) {
+                    replicate(point.id(), point.vector(), TextSegment.from(text, metadata));
+                }
+            }
+        });
+        ready = true;
+        System.out.println("Loaded ANN index from " + points + " vectors in "
+            + (System.nanoTime() - startedAt) / 1_000_000 + " ms");
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = UUID.randomUUID().toString();
+        add(id, embedding);
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        addAll(List.of(id), List.of(embedding), null);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment segment) {
+        return addAll(List.of(embedding), List.of(segment)).get(0);
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        return addAll(embeddings, null);
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings, List<TextSegment> embedded) {
+        if (mode == Mode.READ_THROUGH || mode == Mode.OFF) {
+            List<String> ids = embedded == null ? qdrant.addAll(embeddings) : qdrant.addAll(embeddings, embedded);
+            replicateAll(ids, embeddings, embedded);
+            return ids;
+        }
+        List<String> ids = embeddings.stream().map(embedding -> UUID.randomUUID().toString()).toList();
+        replicateAll(ids, embeddings, embedded);
+        return ids;
+    }
+
+    @Override
+    public void addAll(List<String> ids, List<Embedding> embeddings, List<TextSegment> embedded) {
+        if (mode != Mode.STANDALONE) {
+            qdrant.addAll(ids, embeddings, embedded);
+        }
+        replicateAll(ids, embeddings, embedded);
+    }
+
+    @Override
+    public void remove(String id) {
+        removeAll(List.of(id));
+    }
+
+    @Override
+    public void removeAll(Collection<String> ids) {
+        if (mode != Mode.STANDALONE) {
+            qdrant.removeAll(ids);
+        }
+        if (index != null) {
+            synchronized (this) {
+                for (String id : ids) {
+                    index.remove(id);
+                    segments.remove(id);
+                    if (loading) {
+                        removedWhileLoading.add(id);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void removeAll(Filter filter) {
+        if (mode != Mode.STANDALONE) {
+            qdrant.removeAll(filter);
+        }
+        if (index != null) {
+            List<String> matching = segments.entrySet().stream()
+                .filter(entry -> filter.test(entry.getValue().metadata()))
+                .map(Map.Entry::getKey)
+                .toList();
+            synchronized (this) {
+                matching.forEach(id -> {
+                    index.remove(id);
+                    segments.remove(id);
+                });
+            }
+        }
+    }
+
+    @Override
+    public void removeAll() {
+        if (mode != Mode.STANDALONE) {
+            qdrant.removeAll();
+        }
+        if (index != null) {
+            synchronized (this) {
+                index.keys().forEach(index::remove);
+                segments.clear();
+            }
+        }
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        if (!ready) {
+            return qdrant.search(request);
+        }
+        Filter filter = request.filter();
+        Predicate<String> accept = filter == null
+            ? id -> true
+            : id -> {
+                TextSegment segment = segments.get(id);
+                return segment != null && filter.test(segment.metadata());
+            };
+
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>();
+        for (HnswIndex.Neighbour neighbour : index.search(request.queryEmbedding().vector(), request.maxResults(), efSearch, accept)) {
+            // Same relevance scale as the Qdrant store, cosine similarity mapped to [0, 1]
+            double score = (neighbour.similarity() + 1) / 2;
+            TextSegment segment = segments.get(neighbour.key());
+            float[] vector = index.vector(neighbour.key());
+            if (score >= request.minScore() && vector != null) {
+                matches.add(new EmbeddingMatch<>(score, neighbour.key(), Embedding.from(vector), segment));
+            }
+        }
+        return new EmbeddingSearchResult<>(matches);
+    }
+
+    // Recall@k of the HNSW search against brute force, querying with stored vectors. The reference
+    // is only exact when full precision vectors are available, see Evaluation.exactReference.
+    public Evaluation evaluate(int samples, int k) {
+        if (index == null || index.size() < 2) {
+            return new Evaluation(0, k, 0, 0, 0, false);
+        }
+        List<String> keys = index.keys();
+        Random random = new Random(7);
+        long annNanos = 0;
+        long exactNanos = 0;
+        double recallSum = 0;
+        for (int i = 0; i < samples; i++) {
+            String queryKey = keys.get(random.nextInt(keys.size()));
+            float[] query = index.vector(queryKey);
+            if (query == null) {
+                continue;
+            }
+            Predicate<String> others = key -> !key.equals(queryKey);
+
+            long startedAt = System.nanoTime();
+            List<HnswIndex.Neighbour> approximate = index.search(query, k, efSearch, others);
+            annNanos += System.nanoTime() - startedAt;
+
+            startedAt = System.nanoTime();
+            List<HnswIndex.Neighbour> exact = index.bruteForce(query, k, others);
+            exactNanos += System.nanoTime() - startedAt;
+
+            Set<String> expected = new HashSet<>();
+            exact.forEach(neighbour -> expected.add(neighbour.key()));
+            long found = approximate.stream().filter(neighbour -> expected.contains(neighbour.key())).count();
+            recallSum += exact.isEmpty() ? 1 : (double) found / exact.size();
+        }
+        return new Evaluation(samples, k, recallSum / samples, annNanos / samples / 1000, exactNanos / samples / 1000,
+            index.isExact());
+    }
+
+    public Stats stats() {
+        if (index == null) {
+            return new Stats(mode, false, 0, 0, efSearch, quantization, 0, 0);
+        }
+        return new Stats(mode, ready, index.size(), index.graphSize(), efSearch, quantization,
+            index.vectorBytes(), index.offHeapBytes());
+    }
+
+    private void replicateAll(List<String> ids, List<Embedding> embeddings, List<TextSegment> embedded) {
+        if (index == null) {
+            return;
+        }
+        for (int i = 0; i < ids.size(); i++) {
+            // Segments without text are never returned by the application, only their vectors are kept
+            TextSegment segment = embedded == null ? null : embedded.get(i);
+            replicate(ids.get(i), embeddings.get(i).vector(), segment);
+        }
+    }
+
+    private void replicate(String id, float[] vector, TextSegment segment) {
+        index.add(id, vector);
+        if (segment != null) {
+            segments.put(id, segment);
+        }
+    }
+
+    // Vector bytes are the heap used by the searched vectors, off-heap bytes the full precision copies
+    public record Stats(Mode mode, boolean ready, int vectors, int graphNodes, int efSearch,
+                        VectorStorage.Quantization quantization, long vectorBytes, long offHeapBytes) {}
+
+    public record Evaluation(int samples, int k, double recall, long annMicros, long bruteForceMicros, boolean exactReference) {}
+}
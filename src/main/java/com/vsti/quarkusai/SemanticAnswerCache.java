@@ -0,0 +1,163 @@
+package com.vsti.quarkusai;
+
+import dev.langchain4j.data.embedding.Embedding;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.LongSupplier;
+
+@ApplicationScoped
+public class SemanticAnswerCache {
+
+    @ConfigProperty(name = "rag.answer-cache.enabled", defaultValue = "true")
+    boolean enabled;
+
+    @ConfigProperty(name = "rag.answer-cache.similarity-threshold", defaultValue = "0.95")
+    double similarityThreshold;
+
+    @ConfigProperty(name = "rag.answer-cache.max-size", defaultValue = "500")
+    int maxSize;
+
+    @ConfigProperty(name = "rag.answer-cache.ttl", defaultValue = "PT30M")
+    Duration ttl;
+
+    private final LongSupplier clock;
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long nextEntryId;
+    private long version;
+    private long hits;
+    private long misses;
+    private long invalidations;
+
+    public SemanticAnswerCache() {
+        this.clock = System::currentTimeMillis;
+    }
+
+    SemanticAnswerCache(double similarityThreshold, int maxSize, Duration ttl, LongSupplier clock) {
+        this.enabled = true;
+        this.similarityThreshold = similarityThreshold;
+        this.maxSize = maxSize;
+        this.ttl = ttl;
+        this.clock = clock;
+    }
+
+    public synchronized Optional<RagChatService.ChatResponse> lookup(Embedding queryEmbedding) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+
+        float[] query = normalized(queryEmbedding.vector());
+        long now = clock.getAsLong();
+        Long bestId = null;
+        double bestSimilarity = similarityThreshold;
+
+        Iterator<Map.Entry<Long, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, Entry> candidate = iterator.next();
+            if (candidate.getValue().expiresAt() <= now) {
+                iterator.remove();
+                continue;
+            }
+            double similarity = dot(query, candidate.getValue().vector());
+            if (similarity >= bestSimilarity) {
+                bestSimilarity = similarity;
+                bestId = candidate.getKey();
+            }
+        }
+
+        if (bestId == null) {
+            misses++;
+            return Optional.empty();
+        }
+        hits++;
+        // get() also marks the entry as recently used
+        return Optional.of(entries.get(bestId).response());
+    }
+
+    public synchronized long version() {
+        return version;
+    }
+
+    // Skip answers whose retrieval started before the last invalidation, so a generation
+    // racing with a document delete cannot bring stale content back into the cache
+    public synchronized void put(Embedding queryEmbedding, RagChatService.ChatResponse response,
+                                 Set<String> documentIds, long versionAtRetrieval) {
+        if (!enabled || versionAtRetrieval != version) {
+            return;
+        }
+
+        entries.put(nextEntryId++, new Entry(normalized(queryEmbedding.vector()), response,
+            Set.copyOf(documentIds), clock.getAsLong() + ttl.toMillis()));
+
+        Iterator<Long> iterator = entries.keySet().iterator();
+        while (entries.size() > maxSize && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    public synchronized void invalidateDocument(String documentId) {
+        version++;
+        entries.values().removeIf(entry -> {
+            boolean stale = entry.documentIds().contains(documentId);
+            if (stale) {
+                invalidations++;
+            }
+            return stale;
+        });
+    }
+
+    // Answers generated without document context may be answerable by a newly added document
+    public synchronized void invalidateContextFree() {
+        version++;
+        entries.values().removeIf(entry -> {
+            boolean stale = entry.documentIds().isEmpty();
+            if (stale) {
+                invalidations++;
+            }
+            return stale;
+        });
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(entries.size(), maxSize, similarityThreshold, hits, misses, invalidations);
+    }
+
+    private static float[] normalized(float[] vector) {
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        norm = Math.sqrt(norm);
+
+        float[] result = new float[vector.length];
+        if (norm == 0) {
+            return result;
+        }
+        for (int i = 0; i < vector.length; i++) {
+            result[i] = (float) (vector[i] / norm);
+        }
+        return result;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        if (a.length != b.length) {
+            return -1;
+        }
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    private record Entry(float[] vector, RagChatService.ChatResponse response, Set<String> documentIds, long expiresAt) {}
+
+    public record Stats(int size, int maxSize, double similarityThreshold, long hits, long misses, long invalidations) {}
+}
@@ -0,0 +1,125 @@
+package com.vsti.quarkusai;
+
+import io.smallrye.mutiny.subscription.Cancellable;
+import io.vertx.core.Vertx;
+import jakarta.ws.rs.sse.OutboundSseEvent;
+import jakarta.ws.rs.sse.Sse;
+import jakarta.ws.rs.sse.SseEventSink;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// One /chat/stream response. A heartbeat event keeps proxies from closing the connection while the
+// answer is pending and notices a closed tab even when no token is due. When the client is gone, a
+// send fails or the answer makes no progress for the idle timeout, the generation is cancelled.
+class SseChatStream implements RagChatService.StreamHandler {
+
+    private final SseEventSink eventSink;
+    private final Sse sse;
+    private final Vertx vertx;
+    private final long idleTimeoutNanos;
+    private final long heartbeat;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private volatile boolean abandoned;
+    private volatile Cancellable generation;
+    private volatile long lastProgressAt = System.nanoTime();
+
+    SseChatStream(SseEventSink eventSink, Sse sse, Vertx vertx, Duration heartbeatInterval, Duration idleTimeout) {
+        this.eventSink = eventSink;
+        this.sse = sse;
+        this.vertx = vertx;
+        this.idleTimeoutNanos = idleTimeout.toNanos();
+        this.heartbeat = vertx.setPeriodic(Math.max(1, heartbeatInterval.toMillis()), id -> tick());
+    }
+
+    // The handle is only known once the stream has been started, it may already be abandoned by then
+    void attach(Cancellable generation) {
+        this.generation = generation;
+        if (abandoned) {
+            generation.cancel();
+        }
+    }
+
+    @Override
+    public void onSources(List<String> sources) {
+        lastProgressAt = System.nanoTime();
+        if (!sources.isEmpty()) {
+            send(sse.newEvent("sources", String.join(",", sources)));
+        }
+    }
+
+    @Override
+    public void onToken(String token) {
+        lastProgressAt = System.nanoTime();
+        send(sse.newEvent("token", token));
+    }
+
+    @Override
+    public void onComplete(RagChatService.StreamStats stats) {
+        send(sse.newEvent("stats", stats.toJson()));
+        send(sse.newEvent("complete", ""));
+        close();
+    }
+
+    @Override
+    public void onError(Throwable error) {
+        if (error instanceof Bulkhead.RejectedException rejected) {
+            // The stream has started with status 200, so the back-off goes into the event
+            send(sse.newEventBuilder()
+                .name("error")
+                .data(rejected.getMessage() + " (retry in " + rejected.retryAfterSeconds() + " s)")
+                .reconnectDelay(rejected.retryAfterSeconds() * 1000L)
+                .build());
+        } else {
+            send(sse.newEvent("error", "Failed to stream: " + error.getMessage()));
+        }
+        close();
+    }
+
+    private void tick() {
+        if (closed.get()) {
+            return;
+        }
+        if (System.nanoTime() - lastProgressAt > idleTimeoutNanos) {
+            send(sse.newEvent("error", "No response from the model for " + idleTimeoutNanos / 1_000_000_000 + " s"));
+            abandon();
+            return;
+        }
+        send(sse.newEvent("heartbeat", ""));
+    }
+
+    private void send(OutboundSseEvent event) {
+        if (closed.get()) {
+            return;
+        }
+        if (eventSink.isClosed()) {
+            abandon();
+            return;
+        }
+        eventSink.send(event).whenComplete((ignored, failure) -> {
+            if (failure != null) {
+                abandon();
+            }
+        });
+    }
+
+    private void abandon() {
+        abandoned = true;
+        if (close()) {
+            Cancellable running = generation;
+            if (running != null) {
+                running.cancel();
+            }
+        }
+    }
+
+    private boolean close() {
+        if (!closed.compareAndSet(false, true)) {
+            return false;
+        }
+        vertx.cancelTimer(heartbeat);
+        eventSink.close();
+        return true;
+    }
+}
@@ -0,0 +1,84 @@
+package com.vsti.quarkusai;
+
+import jakarta.inject.Inject;
+import jakarta.ws.rs.DefaultValue;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.MediaType;
+
+import java.util.List;
+
+@Path("/stats")
+public class StatsResource {
+
+    @Inject
+    QueryEmbeddingCache embeddingCache;
+
+    @Inject
+    SemanticAnswerCache answerCache;
+
+    @Inject
+    LexicalIndex lexicalIndex;
+
+    @Inject
+    ReplicatedEmbeddingStore annIndex;
+
+    @Inject
+    ConversationMemoryStore chatMemory;
+
+    @Inject
+    ChunkingService chunking;
+
+    @GET
+    @Path("/embedding-cache")
+    @Produces(MediaType.APPLICATION_JSON)
+    public QueryEmbeddingCache.Stats embeddingCacheStats() {
+        return embeddingCache.stats();
+    }
+
+    @GET
+    @Path("/answer-cache")
+    @Produces(MediaType.APPLICATION_JSON)
+    public SemanticAnswerCache.Stats answerCacheStats() {
+        return answerCache.stats();
+    }
+
+    @GET
+    @Path("/lexical-index")
+    @Produces(MediaType.APPLICATION_JSON)
+    public LexicalIndex.Stats lexicalIndexStats() {
+        return lexicalIndex.stats();
+    }
+
+    @GET
+    @Path("/ann-index")
+    @Produces(MediaType.APPLICATION_JSON)
+    public ReplicatedEmbeddingStore.Stats annIndexStats() {
+        return annIndex.stats();
+    }
+
+    @GET
+    @Path("/chat-memory")
+    @Produces(MediaType.APPLICATION_JSON)
+    public ConversationMemoryStore.Stats chatMemoryStats() {
+        return chatMemory.stats();
+    }
+
+    @GET
+    @Path("/chunking")
+    @Produces(MediaType.APPLICATION_JSON)
+    public List<ChunkingService.Stats> chunkingStats() {
+        return chunking.stats();
+    }
+
+    // Compares HNSW results with brute force over the same vectors
+    @GET
+    @Path("/ann-index/recall")
+    @Produces(MediaType.APPLICATION_JSON)
+    public ReplicatedEmbeddingStore.Evaluation annIndexRecall(@QueryParam("samples") @DefaultValue("100") int samples,
+                                                              @QueryParam("k") @DefaultValue("10") int k) {
+        return annIndex.evaluate(Math.max(1, Math.min(samples, 10_000)), Math.max(1, k));
+    }
+}
@@ -0,0 +1,149 @@
+package com.vsti.quarkusai;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Fans one streamed answer out to every request that asked the same question while it was being
+// generated. Subscribers that join late first get the sources and tokens produced so far. A
+// subscriber whose handler throws, typically a closed connection, is dropped without affecting
+// the others. Once the last subscriber has left the answer is abandoned and nobody joins it anymore.
+class StreamBroadcast implements RagChatService.StreamHandler {
+
+    private final Consumer<StreamBroadcast> onFinished;
+    private final List<Subscriber> subscribers = new ArrayList<>();
+    private final List<String> tokens = new ArrayList<>();
+    private List<String> sources;
+    private boolean finished;
+    private boolean abandoned;
+    private Runnable onAbandoned = () -> {};
+
+    StreamBroadcast(RagChatService.StreamHandler first, Consumer<StreamBroadcast> onFinished) {
+        this.onFinished = onFinished;
+        subscribers.add(new Subscriber(first, true));
+    }
+
+    // False once the answer is complete, the caller has to start a new one
+    synchronized boolean join(RagChatService.StreamHandler handler) {
+        if (finished) {
+            return false;
+        }
+        Subscriber subscriber = new Subscriber(handler, false);
+        if (sources != null) {
+            subscriber.sources(sources);
+        }
+        tokens.forEach(subscriber::token);
+        if (!subscriber.failed) {
+            subscribers.add(subscriber);
+        }
+        return true;
+    }
+
+    synchronized void leave(RagChatService.StreamHandler handler) {
+        subscribers.removeIf(subscriber -> subscriber.handler == handler);
+        abandonIfUnsubscribed();
+    }
+
+    // Runs right away when the answer has already been abandoned
+    synchronized void onAbandoned(Runnable action) {
+        onAbandoned = action;
+        if (abandoned) {
+            action.run();
+        }
+    }
+
+    synchronized int subscribers() {
+        return subscribers.size();
+    }
+
+    @Override
+    public synchronized void onSources(List<String> sources) {
+        this.sources = sources;
+        subscribers.forEach(subscriber -> subscriber.sources(sources));
+        subscribers.removeIf(subscriber -> subscriber.failed);
+        abandonIfUnsubscribed();
+    }
+
+    @Override
+    public synchronized void onToken(String token) {
+        tokens.add(token);
+        subscribers.forEach(subscriber -> subscriber.token(token));
+        subscribers.removeIf(subscriber -> subscriber.failed);
+        abandonIfUnsubscribed();
+    }
+
+    @Override
+    public void onComplete(RagChatService.StreamStats stats) {
+        finish().forEach(subscriber -> subscriber.complete(stats));
+    }
+
+    @Override
+    public void onError(Throwable error) {
+        finish().forEach(subscriber -> subscriber.error(error));
+    }
+
+    private void abandonIfUnsubscribed() {
+        if (subscribers.isEmpty() && !finished) {
+            finished = true;
+            abandoned = true;
+            onFinished.accept(this);
+            onAbandoned.run();
+        }
+    }
+
+    private synchronized List<Subscriber> finish() {
+        finished = true;
+        onFinished.accept(this);
+        return List.copyOf(subscribers);
+    }
+
+    private static final class Subscriber {
+
+        private final RagChatService.StreamHandler handler;
+        private final boolean leader;
+        private final long joinedAt = System.nanoTime();
+        private long firstTokenAt;
+        private int tokenCount;
+        private boolean failed;
+
+        Subscriber(RagChatService.StreamHandler handler, boolean leader) {
+            this.handler = handler;
+            this.leader = leader;
+        }
+
+        void sources(List<String> sources) {
+            deliver(() -> handler.onSources(sources));
+        }
+
+        void token(String token) {
+            if (firstTokenAt == 0) {
+                firstTokenAt = System.nanoTime();
+            }
+            tokenCount++;
+            deliver(() -> handler.onToken(token));
+        }
+
+        // Joined subscribers get timings measured from when they joined
+        void complete(RagChatService.StreamStats stats) {
+            RagChatService.StreamStats own = leader ? stats
+                : RagChatService.StreamStats.of(joinedAt, firstTokenAt, System.nanoTime(), tokenCount);
+            deliver(() -> handler.onComplete(own));
+        }
+
+        void error(Throwable error) {
+            deliver(() -> handler.onError(error));
+        }
+
+        private void deliver(Runnable event) {
+            if (failed) {
+                return;
+            }
+            try {
+                event.run();
+            } catch (RuntimeException e) {
+                failed = true;
+                System.err.println("Dropping chat stream subscriber: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -1,11 +1,13 @@
 package com.vsti.quarkusai;
 
-import dev.langchain4j.service.TokenStream;
 import dev.langchain4j.service.UserMessage;
 import io.quarkiverse.langchain4j.RegisterAiService;
+import io.smallrye.mutiny.Multi;
 
-@RegisterAiService
+// Stateless, conversations go through ConversationAiService
+@RegisterAiService(chatMemoryProviderSupplier = RegisterAiService.NoChatMemoryProviderSupplier.class)
 public interface StreamingChatAiService {
 
-    TokenStream chatStream(@UserMessage String message);
+    // The Ollama client emits tokens without blocking a thread
+    Multi<String> tokens(@UserMessage String message);
 }
@@ -0,0 +1,182 @@
+package com.vsti.quarkusai;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Splits text as it is extracted instead of after the whole document has been read.
+// Text is buffered up to one window, the window is split with the regular splitter and
+// the resulting segments are handed to the sink in batches, so heap usage depends on
+// window and batch size rather than on document size. When section aware, every heading of
+// Tika's XHTML output ends the current window, so no chunk spans two sections, and the
+// segments carry the heading text they belong to as "section" metadata.
+public class StreamingChunker {
+
+    private static final String[] BOUNDARIES = {"\n\n", "\n", ". ", " "};
+
+    private final DocumentSplitter splitter;
+    private final int windowChars;
+    private final int overlapChars;
+    private final int batchSize;
+    private final Consumer<List<TextSegment>> sink;
+    private final boolean sectionAware;
+
+    private final StringBuilder buffer = new StringBuilder();
+    private List<TextSegment> batch = new ArrayList<>();
+    private int segmentCount;
+    private long characterCount;
+    private String section;
+    // Text of the heading being read, null outside of headings
+    private StringBuilder heading;
+
+    public StreamingChunker(DocumentSplitter splitter, int windowChars, int overlapChars, int batchSize,
+                            Consumer<List<TextSegment>> sink) {
+        this(splitter, windowChars, overlapChars, batchSize, false, sink);
+    }
+
+    public StreamingChunker(DocumentSplitter splitter, int windowChars, int overlapChars, int batchSize,
+                            boolean sectionAware, Consumer<List<TextSegment>> sink) {
+        this.splitter = splitter;
+        this.windowChars = windowChars;
+        this.overlapChars = overlapChars;
+        this.batchSize = batchSize;
+        this.sectionAware = sectionAware;
+        this.sink = sink;
+    }
+
+    public void append(char[] chars, int start, int length) {
+        if (heading != null) {
+            heading.append(chars, start, length);
+        }
+        buffer.append(chars, start, length);
+        characterCount += length;
+        while (buffer.length() >= windowChars) {
+            splitWindow(cutPosition());
+        }
+    }
+
+    public void append(String text) {
+        append(text.toCharArray(), 0, text.length());
+    }
+
+    public void finish() {
+        endSection();
+        flush();
+    }
+
+    // Splits what is buffered without carrying an overlap into the next section
+    public void startSection() {
+        endSection();
+        heading = new StringBuilder();
+    }
+
+    public void endHeading() {
+        if (heading != null) {
+            String text = heading.toString().strip().replaceAll("\\s+", " ");
+            section = text.isEmpty() ? null : text;
+            heading = null;
+        }
+    }
+
+    public int segmentCount() {
+        return segmentCount;
+    }
+
+    public long characterCount() {
+        return characterCount;
+    }
+
+    // Receives Tika's SAX events; wrap it in a BodyContentHandler to skip the document head
+    public ContentHandler contentHandler() {
+        return new DefaultHandler() {
+            @Override
+            public void startElement(String uri, String localName, String qName, Attributes attributes) {
+                if (sectionAware && isHeading(localName)) {
+                    startSection();
+                }
+            }
+
+            @Override
+            public void endElement(String uri, String localName, String qName) {
+                if (sectionAware && isHeading(localName)) {
+                    endHeading();
+                }
+            }
+
+            @Override
+            public void characters(char[] ch, int start, int length) {
+                append(ch, start, length);
+            }
+
+            @Override
+            public void ignorableWhitespace(char[] ch, int start, int length) {
+                append(ch, start, length);
+            }
+        };
+    }
+
+    private static boolean isHeading(String element) {
+        return element.length() == 2 && element.charAt(0) == 'h' && element.charAt(1) >= '1' && element.charAt(1) <= '6';
+    }
+
+    private void endSection() {
+        if (!buffer.toString().isBlank()) {
+            splitWindow(buffer.length());
+        }
+        buffer.setLength(0);
+    }
+
+    private int cutPosition() {
+        // Prefer the last paragraph, line, sentence or word boundary in the second half of the window
+        int minimum = windowChars / 2;
+        for (String boundary : BOUNDARIES) {
+            int index = buffer.lastIndexOf(boundary, windowChars - boundary.length());
+            if (index >= minimum) {
+                return index + boundary.length();
+            }
+        }
+        return windowChars;
+    }
+
+    private void splitWindow(int end) {
+        String window = buffer.substring(0, end);
+        if (!window.isBlank()) {
+            for (TextSegment segment : splitter.split(Document.from(window))) {
+                Metadata metadata = new Metadata().put("index", String.valueOf(segmentCount++));
+                if (section != null) {
+                    metadata.put("section", section);
+                }
+                batch.add(TextSegment.from(segment.text(), metadata));
+                if (batch.size() >= batchSize) {
+                    flush();
+                }
+            }
+        }
+
+        // Carry a word-aligned tail over so the next window overlaps like adjacent segments do
+        int tailStart = Math.max(0, end - overlapChars);
+        int space = buffer.indexOf(" ", tailStart);
+        if (end < buffer.length() && space >= 0 && space < end) {
+            tailStart = space + 1;
+        } else {
+            tailStart = end;
+        }
+        buffer.delete(0, tailStart);
+    }
+
+    private void flush() {
+        if (!batch.isEmpty()) {
+            List<TextSegment> full = batch;
+            batch = new ArrayList<>();
+            sink.accept(full);
+        }
+    }
+}
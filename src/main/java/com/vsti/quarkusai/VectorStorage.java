@@ -0,0 +1,354 @@
+package com.vsti.quarkusai;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+// Normalized vectors addressed by ordinal, kept in pages of primitive arrays instead of one
+// object per vector. INT8 keeps one byte per dimension plus a scale, BINARY one bit per dimension.
+// The loops below use independent accumulators over contiguous arrays so the JIT can unroll and
+// vectorize them.
+public abstract class VectorStorage {
+
+    public enum Quantization { NONE, INT8, BINARY }
+
+    static final int PAGE_SIZE = 1024;
+
+    protected final int dimensions;
+    private int size;
+
+    protected VectorStorage(int dimensions) {
+        this.dimensions = dimensions;
+    }
+
+    static VectorStorage create(Quantization quantization, int dimensions) {
+        return switch (quantization) {
+            case NONE -> new Float32(dimensions);
+            case INT8 -> new Int8(dimensions);
+            case BINARY -> new Binary(dimensions);
+        };
+    }
+
+    // Scores stored vectors against one query vector or one stored vector
+    @FunctionalInterface
+    interface Scorer {
+        double similarity(int ordinal);
+    }
+
+    int dimensions() {
+        return dimensions;
+    }
+
+    int size() {
+        return size;
+    }
+
+    // Ordinals are assigned in order, a new page is allocated every PAGE_SIZE vectors
+    final void add(int ordinal, float[] normalized) {
+        if (normalized.length != dimensions) {
+            throw new IllegalArgumentException("Expected " + dimensions + " dimensions but got " + normalized.length);
+        }
+        if (ordinal % PAGE_SIZE == 0) {
+            addPage();
+        }
+        write(ordinal / PAGE_SIZE, ordinal % PAGE_SIZE, normalized);
+        size = ordinal + 1;
+    }
+
+    abstract Scorer scorer(float[] normalizedQuery);
+
+    abstract Scorer scorer(int ordinal);
+
+    // The stored vector, approximated when quantized
+    abstract float[] decode(int ordinal);
+
+    abstract long bytes();
+
+    protected abstract void addPage();
+
+    protected abstract void write(int page, int slot, float[] normalized);
+
+    static final class Float32 extends VectorStorage {
+
+        private final List<float[]> pages = new ArrayList<>();
+
+        Float32(int dimensions) {
+            super(dimensions);
+        }
+
+        @Override
+        protected void addPage() {
+            pages.add(new float[PAGE_SIZE * dimensions]);
+        }
+
+        @Override
+        protected void write(int page, int slot, float[] normalized) {
+            System.arraycopy(normalized, 0, pages.get(page), slot * dimensions, dimensions);
+        }
+
+        @Override
+        Scorer scorer(float[] normalizedQuery) {
+            return ordinal -> dot(normalizedQuery, pages.get(ordinal / PAGE_SIZE), (ordinal % PAGE_SIZE) * dimensions, dimensions);
+        }
+
+        @Override
+        Scorer scorer(int ordinal) {
+            return scorer(decode(ordinal));
+        }
+
+        @Override
+        float[] decode(int ordinal) {
+            float[] vector = new float[dimensions];
+            System.arraycopy(pages.get(ordinal / PAGE_SIZE), (ordinal % PAGE_SIZE) * dimensions, vector, 0, dimensions);
+            return vector;
+        }
+
+        @Override
+        long bytes() {
+            return (long) pages.size() * PAGE_SIZE * dimensions * Float.BYTES;
+        }
+    }
+
+    // Symmetric per-vector scale: code = round(value / maxAbs * 127)
+    static final class Int8 extends VectorStorage {
+
+        private final List<byte[]> pages = new ArrayList<>();
+        private final List<float[]> scales = new ArrayList<>();
+
+        Int8(int dimensions) {
+            super(dimensions);
+        }
+
+        @Override
+        protected void addPage() {
+            pages.add(new byte[PAGE_SIZE * dimensions]);
+            scales.add(new float[PAGE_SIZE]);
+        }
+
+        @Override
+        protected void write(int page, int slot, float[] normalized) {
+            float maxAbs = 0;
+            for (float value : normalized) {
+                maxAbs = Math.max(maxAbs, Math.abs(value));
+            }
+            byte[] codes = pages.get(page);
+            int offset = slot * dimensions;
+            for (int i = 0; i < dimensions; i++) {
+                codes[offset + i] = maxAbs == 0 ? 0 : (byte) Math.round(normalized[i] / maxAbs * 127);
+            }
+            scales.get(page)[slot] = maxAbs / 127;
+        }
+
+        @Override
+        Scorer scorer(float[] normalizedQuery) {
+            // Asymmetric: the query keeps full precision, only the stored side is quantized
+            return ordinal -> {
+                int page = ordinal / PAGE_SIZE;
+                int slot = ordinal % PAGE_SIZE;
+                return scales.get(page)[slot] * dot(normalizedQuery, pages.get(page), slot * dimensions, dimensions);
+            };
+        }
+
+        @Override
+        Scorer scorer(int ordinal) {
+            byte[] codes = pages.get(ordinal / PAGE_SIZE);
+            int offset = (ordinal % PAGE_SIZE) * dimensions;
+            float scale = scales.get(ordinal / PAGE_SIZE)[ordinal % PAGE_SIZE];
+            return other -> {
+                int page = other / PAGE_SIZE;
+                int slot = other % PAGE_SIZE;
+                return (double) scale * scales.get(page)[slot] * dot(codes, offset, pages.get(page), slot * dimensions, dimensions);
+            };
+        }
+
+        @Override
+        float[] decode(int ordinal) {
+            byte[] codes = pages.get(ordinal / PAGE_SIZE);
+            int offset = (ordinal % PAGE_SIZE) * dimensions;
+            float scale = scales.get(ordinal / PAGE_SIZE)[ordinal % PAGE_SIZE];
+            float[] vector = new float[dimensions];
+            for (int i = 0; i < dimensions; i++) {
+                vector[i] = codes[offset + i] * scale;
+            }
+            return vector;
+        }
+
+        @Override
+        long bytes() {
+            return (long) pages.size() * PAGE_SIZE * (dimensions + Float.BYTES);
+        }
+    }
+
+    // Sign bits compared by Hamming distance; the angle between two vectors is about pi * distance / dimensions
+    static final class Binary extends VectorStorage {
+
+        private final int words;
+        private final List<long[]> pages = new ArrayList<>();
+
+        Binary(int dimensions) {
+            super(dimensions);
+            this.words = (dimensions + 63) / 64;
+        }
+
+        @Override
+        protected void addPage() {
+            pages.add(new long[PAGE_SIZE * words]);
+        }
+
+        @Override
+        protected void write(int page, int slot, float[] normalized) {
+            System.arraycopy(signBits(normalized), 0, pages.get(page), slot * words, words);
+        }
+
+        @Override
+        Scorer scorer(float[] normalizedQuery) {
+            long[] query = signBits(normalizedQuery);
+            return ordinal -> similarity(query, 0, ordinal);
+        }
+
+        @Override
+        Scorer scorer(int ordinal) {
+            long[] bits = pages.get(ordinal / PAGE_SIZE);
+            int offset = (ordinal % PAGE_SIZE) * words;
+            return other -> similarity(bits, offset, other);
+        }
+
+        @Override
+        float[] decode(int ordinal) {
+            long[] bits = pages.get(ordinal / PAGE_SIZE);
+            int offset = (ordinal % PAGE_SIZE) * words;
+            float magnitude = (float) (1 / Math.sqrt(dimensions));
+            float[] vector = new float[dimensions];
+            for (int i = 0; i < dimensions; i++) {
+                boolean positive = (bits[offset + i / 64] & (1L << (i % 64))) != 0;
+                vector[i] = positive ? magnitude : -magnitude;
+            }
+            return vector;
+        }
+
+        @Override
+        long bytes() {
+            return (long) pages.size() * PAGE_SIZE * words * Long.BYTES;
+        }
+
+        private double similarity(long[] bits, int offset, int ordinal) {
+            long[] other = pages.get(ordinal / PAGE_SIZE);
+            int otherOffset = (ordinal % PAGE_SIZE) * words;
+            int distance = 0;
+            for (int i = 0; i < words; i++) {
+                distance += Long.bitCount(bits[offset + i] ^ other[otherOffset + i]);
+            }
+            return Math.cos(Math.PI * distance / dimensions);
+        }
+
+        private long[] signBits(float[] vector) {
+            long[] bits = new long[words];
+            for (int i = 0; i < dimensions; i++) {
+                if (vector[i] > 0) {
+                    bits[i / 64] |= 1L << (i % 64);
+                }
+            }
+            return bits;
+        }
+    }
+
+    // Full precision copies outside the Java heap, read only to re-score search candidates
+    static final class OffHeap {
+
+        private final int dimensions;
+        private final List<FloatBuffer> pages = new ArrayList<>();
+
+        OffHeap(int dimensions) {
+            this.dimensions = dimensions;
+        }
+
+        void add(int ordinal, float[] normalized) {
+            if (ordinal % PAGE_SIZE == 0) {
+                pages.add(ByteBuffer.allocateDirect(PAGE_SIZE * dimensions * Float.BYTES)
+                    .order(ByteOrder.nativeOrder())
+                    .asFloatBuffer());
+            }
+            pages.get(ordinal / PAGE_SIZE).put((ordinal % PAGE_SIZE) * dimensions, normalized);
+        }
+
+        // Reads the buffer in place, re-scoring a candidate allocates nothing
+        double similarity(float[] normalizedQuery, int ordinal) {
+            return dot(normalizedQuery, pages.get(ordinal / PAGE_SIZE), (ordinal % PAGE_SIZE) * dimensions, dimensions);
+        }
+
+        float[] get(int ordinal) {
+            float[] vector = new float[dimensions];
+            pages.get(ordinal / PAGE_SIZE).get((ordinal % PAGE_SIZE) * dimensions, vector);
+            return vector;
+        }
+
+        long bytes() {
+            return (long) pages.size() * PAGE_SIZE * dimensions * Float.BYTES;
+        }
+    }
+
+    static double dot(float[] query, float[] stored, int offset, int length) {
+        float s0 = 0;
+        float s1 = 0;
+        float s2 = 0;
+        float s3 = 0;
+        int i = 0;
+        for (int bound = length - 3; i < bound; i += 4) {
+            s0 += query[i] * stored[offset + i];
+            s1 += query[i + 1] * stored[offset + i + 1];
+            s2 += query[i + 2] * stored[offset + i + 2];
+            s3 += query[i + 3] * stored[offset + i + 3];
+        }
+        for (; i < length; i++) {
+            s0 += query[i] * stored[offset + i];
+        }
+        return (double) s0 + s1 + s2 + s3;
+    }
+
+    static double dot(float[] query, FloatBuffer stored, int offset, int length) {
+        float s0 = 0;
+        float s1 = 0;
+        float s2 = 0;
+        float s3 = 0;
+        int i = 0;
+        for (int bound = length - 3; i < bound; i += 4) {
+            s0 += query[i] * stored.get(offset + i);
+            s1 += query[i + 1] * stored.get(offset + i + 1);
+            s2 += query[i + 2] * stored.get(offset + i + 2);
+            s3 += query[i + 3] * stored.get(offset + i + 3);
+        }
+        for (; i < length; i++) {
+            s0 += query[i] * stored.get(offset + i);
+        }
+        return (double) s0 + s1 + s2 + s3;
+    }
+
+    static double dot(float[] query, byte[] stored, int offset, int length) {
+        float s0 = 0;
+        float s1 = 0;
+        float s2 = 0;
+        float s3 = 0;
+        int i = 0;
+        for (int bound = length - 3; i < bound; i += 4) {
+            s0 += query[i] * stored[offset + i];
+            s1 += query[i + 1] * stored[offset + i + 1];
+            s2 += query[i + 2] * stored[offset + i + 2];
+            s3 += query[i + 3] * stored[offset + i + 3];
+        }
+        for (; i < length; i++) {
+            s0 += query[i] * stored[offset + i];
+        }
+        return (double) s0 + s1 + s2 + s3;
+    }
+
+    // Integer products of int8 codes, exact and cheaper than floats
+    static long dot(byte[] a, int offsetA, byte[] b, int offsetB, int length) {
+        int sum = 0;
+        for (int i = 0; i < length; i++) {
+            sum += a[offsetA + i] * b[offsetB + i];
+        }
+        return sum;
+    }
+}
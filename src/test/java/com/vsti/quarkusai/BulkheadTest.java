@@ -0,0 +1,76 @@
+package com.vsti.quarkusai;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BulkheadTest {
+
+    private final List<String> rejections = new ArrayList<>();
+
+    @Test
+    void shouldRejectImmediatelyWhenQueueIsFull() {
+        // Given - one permit, no queue
+        Bulkhead bulkhead = new Bulkhead("generation", 1, 0, Duration.ofSeconds(30), rejections::add);
+        Bulkhead.Permit permit = bulkhead.acquire();
+
+        // When
+        long startedAt = System.nanoTime();
+        Bulkhead.RejectedException rejected = assertThrows(Bulkhead.RejectedException.class, bulkhead::acquire);
+
+        // Then
+        assertTrue(System.nanoTime() - startedAt < TimeUnit.SECONDS.toNanos(1));
+        assertTrue(rejected.retryAfterSeconds() >= 1);
+        assertEquals(List.of("queue full"), rejections);
+        permit.close();
+        assertEquals(0, bulkhead.active());
+    }
+
+    @Test
+    void shouldRejectQueuedCallerAfterDeadline() {
+        // Given
+        Bulkhead bulkhead = new Bulkhead("generation", 1, 5, Duration.ofMillis(100), rejections::add);
+        bulkhead.acquire();
+
+        // When / Then
+        assertThrows(Bulkhead.RejectedException.class, bulkhead::acquire);
+        assertEquals(List.of("timeout"), rejections);
+        assertEquals(0, bulkhead.waiting());
+    }
+
+    @Test
+    void shouldAdmitQueuedCallerWhenPermitIsReleased() throws Exception {
+        // Given
+        Bulkhead bulkhead = new Bulkhead("embedding", 1, 5, Duration.ofSeconds(5), rejections::add);
+        Bulkhead.Permit permit = bulkhead.acquire();
+        CountDownLatch queued = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        // When
+        Future<String> waiter = executor.submit(() -> {
+            queued.countDown();
+            return bulkhead.call(() -> "embedded");
+        });
+        queued.await();
+        while (bulkhead.waiting() == 0) {
+            Thread.onSpinWait();
+        }
+        permit.close();
+        permit.close();
+
+        // Then
+        assertEquals("embedded", waiter.get(5, TimeUnit.SECONDS));
+        assertEquals(0, bulkhead.active());
+        assertTrue(rejections.isEmpty());
+        executor.shutdownNow();
+    }
+}
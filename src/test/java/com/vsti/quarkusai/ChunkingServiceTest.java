@@ -0,0 +1,56 @@
+package com.vsti.quarkusai;
+
+import dev.langchain4j.data.segment.TextSegment;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChunkingServiceTest {
+
+    private final ChunkingService chunking = new ChunkingService(ChunkingService.Strategy.SENTENCE,
+        List.of("text/html=section", "text/*=word", "application/pdf = Sentence"), 256, 32);
+
+    @Test
+    void shouldSelectStrategyByContentType() {
+        // Then
+        assertEquals(ChunkingService.Strategy.SECTION, chunking.strategyFor("text/html; charset=UTF-8"));
+        assertEquals(ChunkingService.Strategy.WORD, chunking.strategyFor("text/plain"));
+        assertEquals(ChunkingService.Strategy.SENTENCE, chunking.strategyFor("application/pdf"));
+        assertEquals(ChunkingService.Strategy.SENTENCE, chunking.strategyFor("application/msword"));
+        assertEquals(ChunkingService.Strategy.SENTENCE, chunking.strategyFor(null));
+        assertTrue(chunking.sectionAware(ChunkingService.Strategy.SECTION));
+        assertFalse(chunking.sectionAware(ChunkingService.Strategy.SENTENCE));
+    }
+
+    @Test
+    void shouldReportChunkCountsAndSizes() {
+        // Given
+        chunking.chunked(ChunkingService.Strategy.WORD, List.of(TextSegment.from("x".repeat(40)), TextSegment.from("x".repeat(80))));
+        chunking.documentChunked(ChunkingService.Strategy.WORD);
+
+        // When
+        ChunkingService.Stats stats = chunking.stats().stream()
+            .filter(s -> s.strategy() == ChunkingService.Strategy.WORD)
+            .findFirst()
+            .orElseThrow();
+
+        // Then
+        assertEquals(1, stats.documents());
+        assertEquals(2, stats.chunks());
+        assertEquals(2.0, stats.chunksPerDocument());
+        assertEquals(15.0, stats.averageTokens());
+        assertEquals(10, stats.minTokens());
+        assertEquals(20, stats.maxTokens());
+    }
+
+    @Test
+    void shouldRejectMalformedMappings() {
+        // Then
+        assertThrows(IllegalArgumentException.class,
+            () -> new ChunkingService(ChunkingService.Strategy.WORD, List.of("text/html"), 256, 32));
+        assertThrows(IllegalArgumentException.class,
+            () -> new ChunkingService(ChunkingService.Strategy.WORD, List.of("text/html=paragraph"), 256, 32));
+    }
+}
@@ -0,0 +1,93 @@
+package com.vsti.quarkusai;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContextAssemblerTest {
+
+    private final ContextAssembler assembler = new ContextAssembler(1024, 20);
+
+    @Test
+    void shouldMergeNeighbouringChunksThatShareTheSplitterOverlap() {
+        // Given - the second chunk starts with the last sentence of the first
+        String first = "The license server listens on port 27000. Clients retry every thirty seconds.";
+        String second = "Clients retry every thirty seconds. After ten failures they switch to offline mode.";
+
+        // When
+        ContextAssembler.Assembly assembly = assembler.assemble(List.of(
+            chunk(second, "doc-1"), chunk(first, "doc-1")));
+
+        // Then
+        assertEquals("The license server listens on port 27000. Clients retry every thirty seconds."
+            + " After ten failures they switch to offline mode.", assembly.context());
+        assertEquals(1, assembly.chunks().size());
+        assertTrue(assembly.savedTokens() > 0);
+    }
+
+    @Test
+    void shouldNotMergeOverlapAcrossDocuments() {
+        // Given
+        String first = "The license server listens on port 27000. Clients retry every thirty seconds.";
+        String second = "Clients retry every thirty seconds. After ten failures they switch to offline mode.";
+
+        // When
+        ContextAssembler.Assembly assembly = assembler.assemble(List.of(chunk(first, "doc-1"), chunk(second, "doc-2")));
+
+        // Then
+        assertEquals(first + "\n\n" + second, assembly.context());
+        assertEquals(0, assembly.savedTokens());
+    }
+
+    @Test
+    void shouldDropDuplicateAndContainedChunks() {
+        // Given
+        String full = "Restart the service after changing the configuration file. Changes are not picked up otherwise.";
+        String part = "Changes are not picked up otherwise.";
+
+        // When
+        ContextAssembler.Assembly assembly = assembler.assemble(List.of(
+            chunk(part, "doc-1"), chunk(full, "doc-2"), chunk(full, "doc-3")));
+
+        // Then
+        assertEquals(full, assembly.context());
+        assertEquals(List.of("doc-2.txt"), assembly.chunks().stream().map(ContextAssembler.Chunk::filename).toList());
+    }
+
+    @Test
+    void shouldPackChunksInRankOrderWithinBudget() {
+        // Given - 25, 50 and 10 tokens plus one per separator against a budget of 40
+        ContextAssembler small = new ContextAssembler(40, 20);
+        String best = "a".repeat(100);
+        String large = "b".repeat(200);
+        String short1 = "c".repeat(40);
+
+        // When
+        ContextAssembler.Assembly assembly = small.assemble(List.of(
+            chunk(best, "doc-1"), chunk(large, "doc-2"), chunk(short1, "doc-3")));
+
+        // Then
+        assertEquals(best + "\n\n" + short1, assembly.context());
+        assertEquals(36, assembly.tokens());
+        assertEquals(87, assembly.naiveTokens());
+    }
+
+    @Test
+    void shouldTruncateBestChunkWhenItAloneExceedsBudget() {
+        // Given
+        ContextAssembler tiny = new ContextAssembler(5, 20);
+
+        // When
+        ContextAssembler.Assembly assembly = tiny.assemble(List.of(chunk("one two three four five six seven eight", "doc-1")));
+
+        // Then
+        assertEquals("one two three four", assembly.context());
+        assertEquals(1, assembly.chunks().size());
+    }
+
+    private static ContextAssembler.Chunk chunk(String text, String documentId) {
+        return new ContextAssembler.Chunk(text, documentId + ".txt", documentId);
+    }
+}
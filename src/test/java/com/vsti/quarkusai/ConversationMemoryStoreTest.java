@@ -0,0 +1,147 @@
+package com.vsti.quarkusai;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConversationMemoryStoreTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+
+    @Test
+    void shouldKeepOnlyTheQuestionOfEarlierPrompts() {
+        // Given
+        ConversationMemoryStore store = store(1024, 100_000, 10);
+        String prompt = new RagChatService().buildPromptWithContext("What is ERR-4711?", "ERR-4711 means the license server is down.");
+
+        // When
+        store.updateMessages("s1", List.of(UserMessage.from(prompt), AiMessage.from("The license server is down.")));
+
+        // Then
+        List<ChatMessage> messages = store.getMessages("s1");
+        assertEquals("What is ERR-4711?", ConversationMemoryStore.text(messages.get(0)));
+        assertEquals("The license server is down.", ConversationMemoryStore.text(messages.get(1)));
+    }
+
+    @Test
+    void shouldKeepNewestMessageUnchanged() {
+        // Given
+        ConversationMemoryStore store = store(1024, 100_000, 10);
+        String prompt = new RagChatService().buildPromptWithContext("And how do I fix it?", "Restart the license server.");
+
+        // When
+        store.updateMessages("s1", List.of(UserMessage.from("What is ERR-4711?"), AiMessage.from("A license error."),
+            UserMessage.from(prompt)));
+
+        // Then
+        assertEquals(prompt, ConversationMemoryStore.text(store.getMessages("s1").get(2)));
+    }
+
+    @Test
+    void shouldShortenOlderAnswersBeforeDroppingTurns() {
+        // Given - two turns with long answers, the budget only fits shortened ones
+        ConversationMemoryStore store = store(120, 100_000, 10);
+        String longAnswer = "word ".repeat(100);
+
+        // When
+        store.updateMessages("s1", List.of(UserMessage.from("first"), AiMessage.from(longAnswer),
+            UserMessage.from("second"), AiMessage.from("short")));
+
+        // Then
+        List<ChatMessage> messages = store.getMessages("s1");
+        assertEquals(4, messages.size());
+        assertTrue(ConversationMemoryStore.text(messages.get(1)).length() < longAnswer.length());
+        assertTrue(store.stats().tokens() <= 120);
+    }
+
+    @Test
+    void shouldDropOldestTurnsWhenShorteningIsNotEnough() {
+        // Given
+        ConversationMemoryStore store = store(20, 100_000, 10);
+
+        // When
+        store.updateMessages("s1", List.of(UserMessage.from("q".repeat(40)), AiMessage.from("a".repeat(40)),
+            UserMessage.from("latest question")));
+
+        // Then - the whole first turn goes, the conversation still starts with a question
+        List<ChatMessage> messages = store.getMessages("s1");
+        assertEquals(1, messages.size());
+        assertEquals("latest question", ConversationMemoryStore.text(messages.get(0)));
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsedSessionBeyondCap() {
+        // Given
+        ConversationMemoryStore store = store(1024, 100_000, 2);
+        store.remember("s1", "q1", "a1");
+        store.remember("s2", "q2", "a2");
+        store.getMessages("s1");
+
+        // When
+        store.remember("s3", "q3", "a3");
+
+        // Then
+        assertTrue(store.hasHistory("s1"));
+        assertFalse(store.hasHistory("s2"));
+        assertTrue(store.hasHistory("s3"));
+        assertEquals(1, store.stats().evictions());
+    }
+
+    @Test
+    void shouldEvictSessionsBeyondTotalTokenCap() {
+        // Given - each session holds about 25 tokens
+        ConversationMemoryStore store = store(1024, 60, 100);
+        store.remember("s1", "q".repeat(50), "a".repeat(50));
+        store.remember("s2", "q".repeat(50), "a".repeat(50));
+
+        // When
+        store.remember("s3", "q".repeat(50), "a".repeat(50));
+
+        // Then
+        assertFalse(store.hasHistory("s1"));
+        assertEquals(2, store.stats().sessions());
+        assertTrue(store.stats().tokens() <= 60);
+    }
+
+    @Test
+    void shouldForgetIdleSessions() {
+        // Given
+        ConversationMemoryStore store = store(1024, 100_000, 10);
+        store.remember("s1", "q1", "a1");
+
+        // When
+        now.addAndGet(Duration.ofMinutes(31).toMillis());
+
+        // Then
+        assertFalse(store.hasHistory("s1"));
+        assertTrue(store.getMessages("s1").isEmpty());
+        assertEquals(0, store.stats().tokens());
+    }
+
+    @Test
+    void shouldReleaseTokensOfDeletedSessions() {
+        // Given
+        ConversationMemoryStore store = store(1024, 100_000, 10);
+        store.remember("s1", "question", "answer");
+        store.remember("s1", "follow-up", "another answer");
+        assertEquals(4, store.stats().messages());
+
+        // When
+        store.deleteMessages("s1");
+
+        // Then
+        assertEquals(0, store.stats().sessions());
+        assertEquals(0, store.stats().tokens());
+    }
+
+    private ConversationMemoryStore store(int maxSessionTokens, long maxTotalTokens, int maxSessions) {
+        return new ConversationMemoryStore(maxSessionTokens, maxTotalTokens, maxSessions, Duration.ofMinutes(30), 40, now::get);
+    }
+}
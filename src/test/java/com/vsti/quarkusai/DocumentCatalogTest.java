@@ -0,0 +1,100 @@
+package com.vsti.quarkusai;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DocumentCatalogTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    @TempDir
+    Path directory;
+
+    private Path journal;
+
+    @BeforeEach
+    void setUp() {
+        journal = directory.resolve("catalog.jsonl");
+    }
+
+    @Test
+    void shouldRestoreDocumentsAfterRestart() {
+        // Given
+        DocumentCatalog catalog = new DocumentCatalog(journal, objectMapper);
+        DocumentMetadata kept = document("kept", "kept.txt");
+        catalog.put(kept, List.of("s1", "s2"), Map.of("s1", "h1", "s2", "h2"));
+        catalog.put(document("deleted", "deleted.txt"), List.of("s3"), Map.of());
+        catalog.remove("deleted");
+        catalog.close();
+
+        // When
+        DocumentCatalog restarted = new DocumentCatalog(journal, objectMapper);
+        List<DocumentCatalog.Entry> entries = restarted.load();
+
+        // Then
+        assertTrue(restarted.existed());
+        assertEquals(1, entries.size());
+        assertEquals(kept, entries.get(0).document());
+        assertEquals(List.of("s1", "s2"), entries.get(0).segmentIds());
+        assertEquals("h2", entries.get(0).chunkHashes().get("s2"));
+    }
+
+    @Test
+    void shouldReportMissingJournal() {
+        // When
+        DocumentCatalog catalog = new DocumentCatalog(journal, objectMapper);
+
+        // Then
+        assertTrue(catalog.load().isEmpty());
+        assertFalse(catalog.existed());
+    }
+
+    @Test
+    void shouldSkipTruncatedLastRecord() throws Exception {
+        // Given
+        DocumentCatalog catalog = new DocumentCatalog(journal, objectMapper);
+        catalog.put(document("complete", "complete.txt"), List.of("s1"), Map.of());
+        catalog.close();
+        Files.writeString(journal, "{\"op\":\"put\",\"documentId\":\"trunc", StandardOpenOption.APPEND);
+
+        // When
+        List<DocumentCatalog.Entry> entries = new DocumentCatalog(journal, objectMapper).load();
+
+        // Then
+        assertEquals(1, entries.size());
+        assertEquals("complete", entries.get(0).document().id());
+    }
+
+    @Test
+    void shouldCompactJournalDominatedByHistory() throws Exception {
+        // Given
+        DocumentCatalog catalog = new DocumentCatalog(journal, objectMapper);
+
+        // When - the same document is rewritten far more often than there are documents, the
+        // records after the one that started the compaction are kept however long it takes
+        for (int i = 0; i < 150; i++) {
+            catalog.put(document("doc", "doc.txt").withChunkCount(i), List.of("s" + i), Map.of());
+        }
+        catalog.close();
+
+        // Then
+        assertEquals(1 + 47, Files.readAllLines(journal).size());
+        List<DocumentCatalog.Entry> entries = new DocumentCatalog(journal, objectMapper).load();
+        assertEquals(1, entries.size());
+        assertEquals(149, entries.get(0).document().chunkCount());
+    }
+
+    private static DocumentMetadata document(String id, String filename) {
+        return DocumentMetadata.create(id, filename, "text/plain", 42);
+    }
+}
@@ -1,29 +1,49 @@
 package com.vsti.quarkusai;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import java.lang.reflect.Field;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 class DocumentProcessingServiceTest {
 
     private DocumentProcessingService service;
-    private ConcurrentMap<String, DocumentMetadata> documents;
-    private ConcurrentMap<String, List<String>> documentSegmentIds;
+    private DocumentRegistry registry;
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final RagMetrics metrics = new RagMetrics(meterRegistry);
 
     @BeforeEach
-    void setUp() throws Exception {
+    void setUp() {
         service = new DocumentProcessingService();
-        documents = new ConcurrentHashMap<>();
-        documentSegmentIds = new ConcurrentHashMap<>();
-        
-        // Access private fields for testing
-        setPrivateField("documents", documents);
-        setPrivateField("documentSegmentIds", documentSegmentIds);
+        registry = service.registry;
     }
 
     @Test
@@ -32,8 +52,8 @@ class DocumentProcessingServiceTest {
         DocumentMetadata doc1 = DocumentMetadata.create("id1", "doc1.pdf", "application/pdf", 1000L);
         DocumentMetadata doc2 = DocumentMetadata.create("id2", "doc2.txt", "text/plain", 500L);
         
-        documents.put("id1", doc1);
-        documents.put("id2", doc2);
+        registry.put(doc1, List.of(), Map.of());
+        registry.put(doc2, List.of(), Map.of());
         
         // When
         List<DocumentMetadata> result = service.getAllDocuments();
@@ -44,13 +64,13 @@ class DocumentProcessingServiceTest {
         assertTrue(result.contains(doc2));
         
         // Should return a copy - verify by checking original is unchanged after modification attempt
-        int originalSize = documents.size();
+        int originalSize = registry.size();
         try {
             result.clear();
         } catch (UnsupportedOperationException e) {
             // This is expected for immutable collections - that's fine
         }
-        assertEquals(originalSize, documents.size()); // Original should be unchanged
+        assertEquals(originalSize, registry.size()); // Original should be unchanged
     }
 
     @Test
@@ -67,11 +87,10 @@ class DocumentProcessingServiceTest {
         // Given
         String filename = "test.pdf";
         DocumentMetadata existingDoc = DocumentMetadata.create("existing-id", filename, "application/pdf", 1000L);
-        documents.put("existing-id", existingDoc);
+        registry.put(existingDoc, List.of(), Map.of());
         
         // When
-        boolean hasExisting = documents.values().stream()
-            .anyMatch(doc -> doc.filename().equals(filename));
+        boolean hasExisting = registry.findByFilename(filename).isPresent();
         
         // Then
         assertTrue(hasExisting);
@@ -82,49 +101,43 @@ class DocumentProcessingServiceTest {
         // Given
         String filename = "nonexistent.pdf";
         DocumentMetadata existingDoc = DocumentMetadata.create("existing-id", "other.pdf", "application/pdf", 1000L);
-        documents.put("existing-id", existingDoc);
+        registry.put(existingDoc, List.of(), Map.of());
         
         // When
-        boolean hasExisting = documents.values().stream()
-            .anyMatch(doc -> doc.filename().equals(filename));
+        boolean hasExisting = registry.findByFilename(filename).isPresent();
         
         // Then
         assertFalse(hasExisting);
     }
 
     @Test
-    void shouldRemoveDocumentFromBothMaps() {
+    void shouldRemoveDocumentFromAllIndexes() {
         // Given
         String documentId = "doc-123";
-        DocumentMetadata metadata = DocumentMetadata.create(documentId, "test.pdf", "application/pdf", 1000L);
+        DocumentMetadata metadata = DocumentMetadata.create(documentId, "test.pdf", "application/pdf", 1000L)
+                                                    .withContentHash("abc");
         List<String> segmentIds = List.of("segment1", "segment2");
-        
-        documents.put(documentId, metadata);
-        documentSegmentIds.put(documentId, segmentIds);
+        registry.put(metadata, segmentIds, Map.of());
         
         // When
-        DocumentMetadata removedMetadata = documents.remove(documentId);
-        List<String> removedSegments = documentSegmentIds.remove(documentId);
+        DocumentCatalog.Entry removed = registry.remove(documentId).orElseThrow();
         
         // Then
-        assertEquals(metadata, removedMetadata);
-        assertEquals(segmentIds, removedSegments);
-        assertFalse(documents.containsKey(documentId));
-        assertFalse(documentSegmentIds.containsKey(documentId));
+        assertEquals(metadata, removed.document());
+        assertEquals(segmentIds, removed.segmentIds());
+        assertTrue(registry.get(documentId).isEmpty());
+        assertTrue(registry.findByFilename("test.pdf").isEmpty());
+        assertTrue(registry.findByContentHash("abc").isEmpty());
+        assertTrue(registry.documents().isEmpty());
     }
 
     @Test
-    void shouldReturnNullWhenRemovingNonExistentDocument() {
-        // Given
-        String nonExistentId = "non-existent";
-        
+    void shouldReturnEmptyWhenRemovingNonExistentDocument() {
         // When
-        DocumentMetadata removedMetadata = documents.remove(nonExistentId);
-        List<String> removedSegments = documentSegmentIds.remove(nonExistentId);
+        Optional<DocumentCatalog.Entry> removed = registry.remove("non-existent");
         
         // Then
-        assertNull(removedMetadata);
-        assertNull(removedSegments);
+        assertTrue(removed.isEmpty());
     }
 
     @Test
@@ -134,11 +147,11 @@ class DocumentProcessingServiceTest {
         DocumentMetadata doc2 = DocumentMetadata.create("id2", "doc2.pdf", "application/pdf", 2000L);
         
         // When - simulate concurrent access
-        documents.put("id1", doc1);
-        documents.put("id2", doc2);
+        registry.put(doc1, List.of(), Map.of());
+        registry.put(doc2, List.of(), Map.of());
         
         List<DocumentMetadata> snapshot1 = service.getAllDocuments();
-        documents.remove("id1");
+        registry.remove("id1");
         List<DocumentMetadata> snapshot2 = service.getAllDocuments();
         
         // Then
@@ -148,9 +161,443 @@ class DocumentProcessingServiceTest {
         assertFalse(snapshot2.contains(doc1));
     }
 
-    private void setPrivateField(String fieldName, Object value) throws Exception {
-        Field field = DocumentProcessingService.class.getDeclaredField(fieldName);
-        field.setAccessible(true);
-        field.set(service, value);
+    @Test
+    void shouldPageDocumentsInUploadOrder() {
+        // Given
+        LocalDateTime start = LocalDateTime.of(2025, 1, 1, 12, 0);
+        for (int i = 0; i < 5; i++) {
+            registry.put(new DocumentMetadata("id" + i, "doc" + i + ".txt", "text/plain", 10, start.plusMinutes(4 - i), 1, null),
+                List.of(), Map.of());
+        }
+        
+        // When
+        List<DocumentMetadata> page = service.getDocuments(1, 2);
+        
+        // Then
+        assertEquals(List.of("id3", "id2"), page.stream().map(DocumentMetadata::id).toList());
+    }
+
+    @Test
+    void shouldIndexReplacedDocumentUnderItsNewContentHash() {
+        // Given
+        DocumentMetadata original = DocumentMetadata.create("id1", "manual.txt", "text/plain", 10).withContentHash("old");
+        registry.put(original, List.of("s1"), Map.of());
+        
+        // When
+        registry.put(original.withContentHash("new"), List.of("s2"), Map.of());
+        
+        // Then
+        assertTrue(registry.findByContentHash("old").isEmpty());
+        assertEquals("id1", registry.findByContentHash("new").get(0).id());
+        assertEquals(List.of("s2"), registry.findByFilename("manual.txt").orElseThrow().segmentIds());
+        assertEquals(1, registry.documents().size());
+    }
+
+    @Test
+    void shouldApplyConcurrentUploadsOfSameFilenameAsOneDocument() throws Exception {
+        // Given
+        wireIngestion();
+        String first = paragraphs("First", 3);
+        String second = paragraphs("Second", 3);
+        ExecutorService uploads = Executors.newFixedThreadPool(2);
+        
+        // When
+        try {
+            List<Future<DocumentMetadata>> results = uploads.invokeAll(List.of(
+                () -> service.processDocument("shared.txt", "text/plain",
+                    new ByteArrayInputStream(first.getBytes(StandardCharsets.UTF_8))),
+                () -> service.processDocument("shared.txt", "text/plain",
+                    new ByteArrayInputStream(second.getBytes(StandardCharsets.UTF_8)))));
+            
+            // Then
+            assertEquals(results.get(0).get().id(), results.get(1).get().id());
+        } finally {
+            uploads.shutdown();
+        }
+        assertEquals(1, service.getAllDocuments().size());
+    }
+
+    @Test
+    void shouldNotResurrectDocumentDeletedDuringReupload() throws Exception {
+        // Given - a re-upload of the document is embedding its chunks
+        wireIngestion();
+        String original = paragraphs("Original", 3);
+        DocumentMetadata first = service.processDocument("manual.txt", "text/plain",
+            new ByteArrayInputStream(original.getBytes(StandardCharsets.UTF_8)));
+        CountDownLatch embedding = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        EmbeddingModel delegate = service.embeddingPipeline.embeddingModel;
+        service.embeddingPipeline.embeddingModel = segments -> {
+            embedding.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return delegate.embedAll(segments);
+        };
+        String edited = paragraphs("Edited", 3);
+        ExecutorService requests = Executors.newFixedThreadPool(2);
+
+        // When
+        try {
+            Future<DocumentMetadata> reupload = requests.submit(() -> service.processDocument("manual.txt", "text/plain",
+                new ByteArrayInputStream(edited.getBytes(StandardCharsets.UTF_8))));
+            assertTrue(embedding.await(5, TimeUnit.SECONDS));
+            Future<Boolean> delete = requests.submit(() -> service.deleteDocument(first.id()));
+            Thread.sleep(100);
+            assertFalse(delete.isDone(), "delete must wait for the re-upload of the same file");
+            release.countDown();
+
+            // Then
+            assertEquals(first.id(), reupload.get(5, TimeUnit.SECONDS).id());
+            assertTrue(delete.get(5, TimeUnit.SECONDS));
+        } finally {
+            requests.shutdown();
+        }
+        assertTrue(service.getAllDocuments().isEmpty());
+        assertTrue(storedSegments().isEmpty());
+    }
+
+    @Test
+    void shouldSkipUnchangedReupload() throws Exception {
+        // Given
+        AtomicInteger embeddedSegments = wireIngestion();
+        Path file = Files.createTempFile("unchanged", ".txt");
+        Files.writeString(file, paragraphs("Original", 5));
+        DocumentMetadata first = service.processDocument("manual.txt", "text/plain", file, DocumentProcessingService.IngestionProgress.NONE);
+        int embeddedAfterFirstUpload = embeddedSegments.get();
+
+        // When
+        AtomicBoolean unchanged = new AtomicBoolean();
+        DocumentMetadata second = service.processDocument("manual.txt", "text/plain", file, new DocumentProcessingService.IngestionProgress() {
+            @Override
+            public void onUnchanged() {
+                unchanged.set(true);
+            }
+        });
+
+        // Then
+        assertTrue(unchanged.get());
+        assertEquals(first, second);
+        assertEquals(embeddedAfterFirstUpload, embeddedSegments.get());
+        assertNotNull(first.contentHash());
+        Files.delete(file);
+    }
+
+    @Test
+    void shouldOnlyEmbedChangedChunksOnReupload() throws Exception {
+        // Given
+        AtomicInteger embeddedSegments = wireIngestion();
+        String original = paragraphs("Original", 6);
+        DocumentMetadata first = service.processDocument("manual.txt", "text/plain",
+            new ByteArrayInputStream(original.getBytes(StandardCharsets.UTF_8)));
+        int embeddedAfterFirstUpload = embeddedSegments.get();
+
+        // When - only the last paragraph changes
+        String edited = original.replace("Original paragraph 5", "Edited paragraph 5");
+        DocumentMetadata second = service.processDocument("manual.txt", "text/plain",
+            new ByteArrayInputStream(edited.getBytes(StandardCharsets.UTF_8)));
+
+        // Then
+        assertEquals(first.id(), second.id());
+        assertNotEquals(first.contentHash(), second.contentHash());
+        int reembedded = embeddedSegments.get() - embeddedAfterFirstUpload;
+        assertTrue(reembedded > 0 && reembedded < second.chunkCount(), "re-embedded " + reembedded + " chunks");
+        assertEquals(second.chunkCount(), registry.get(second.id()).orElseThrow().segmentIds().size());
+        assertEquals(1, service.getAllDocuments().size());
+        assertFalse(service.lexicalIndex.search("Edited paragraph", 10).isEmpty());
+    }
+
+    @Test
+    void shouldSkipUnchangedReuploadOfStream() throws Exception {
+        // Given
+        AtomicInteger embeddedSegments = wireIngestion();
+        String text = paragraphs("Original", 5);
+        DocumentMetadata first = service.processDocument("manual.txt", "text/plain",
+            new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)));
+        int embeddedAfterFirstUpload = embeddedSegments.get();
+
+        // When
+        DocumentMetadata second = service.processDocument("manual.txt", "text/plain",
+            new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)));
+
+        // Then
+        assertEquals(first, second);
+        assertEquals(embeddedAfterFirstUpload, embeddedSegments.get());
+        assertEquals(1, meterRegistry.get("rag.ingestion.duration").tag("outcome", "unchanged").timer().count());
+    }
+
+    @Test
+    void shouldKeepReuploadWhenStaleVectorsCannotBeRemoved() throws Exception {
+        // Given - an answer built from the first version is cached
+        wireIngestion();
+        String original = paragraphs("Original", 6);
+        DocumentMetadata first = service.processDocument("manual.txt", "text/plain",
+            new ByteArrayInputStream(original.getBytes(StandardCharsets.UTF_8)));
+        Embedding question = Embedding.from(new float[] {1.0f, 0.0f});
+        service.answerCache.put(question, new RagChatService.ChatResponse("Original answer", List.of("manual.txt")),
+            Set.of(first.id()), service.answerCache.version());
+        service.embeddingStore = new InMemoryEmbeddingStore<>() {
+            @Override
+            public void removeAll(Collection<String> ids) {
+                throw new IllegalStateException("Qdrant unavailable");
+            }
+        };
+
+        // When
+        String edited = original.replace("Original paragraph 5", "Edited paragraph 5");
+        DocumentMetadata second = service.processDocument("manual.txt", "text/plain",
+            new ByteArrayInputStream(edited.getBytes(StandardCharsets.UTF_8)));
+
+        // Then
+        assertNotEquals(first.contentHash(), second.contentHash());
+        assertEquals(List.of(second), service.getAllDocuments());
+        assertTrue(service.answerCache.lookup(question).isEmpty());
+    }
+
+    @Test
+    void shouldRecordIngestionMetrics() throws Exception {
+        // Given
+        wireIngestion();
+        String text = paragraphs("Metrics", 4);
+
+        // When
+        DocumentMetadata metadata = service.processDocument("metrics.txt", "text/plain",
+            new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)));
+
+        // Then
+        assertEquals(1, meterRegistry.get("rag.ingestion.duration").tag("outcome", "stored").timer().count());
+        assertEquals(metadata.chunkCount(), meterRegistry.get("rag.ingestion.chunks").summary().totalAmount());
+        assertEquals(text.length(), meterRegistry.get("rag.ingestion.bytes").summary().totalAmount());
+        assertEquals(1, meterRegistry.get("rag.ingestion.stage.duration").tag("stage", "parse").timer().count());
+        assertTrue(meterRegistry.get("rag.ingestion.stage.duration").tag("stage", "embed").timer().count() > 0);
+        assertTrue(meterRegistry.get("rag.ingestion.stage.duration").tag("stage", "store").timer().count() > 0);
+    }
+
+    @Test
+    void shouldDeleteManyDocumentsInOneCall() throws Exception {
+        // Given
+        wireIngestion();
+        String text = paragraphs("Bulk", 3);
+        DocumentMetadata first = service.processDocument("first.txt", "text/plain",
+            new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)));
+        DocumentMetadata second = service.processDocument("second.txt", "text/plain",
+            new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)));
+
+        // When
+        DocumentProcessingService.BulkDeleteResult result = service.deleteDocuments(List.of(first.id(), second.id(), "unknown"));
+
+        // Then
+        assertEquals(List.of(first.id(), second.id()), result.deleted());
+        assertEquals(List.of("unknown"), result.notFound());
+        assertTrue(result.failed().isEmpty());
+        assertTrue(service.getAllDocuments().isEmpty());
+        assertEquals(0, registry.size());
+    }
+
+    @Test
+    void shouldKeepDocumentsWhoseVectorsCouldNotBeRemoved() throws Exception {
+        // Given
+        wireIngestion();
+        String text = paragraphs("Partial", 2);
+        DocumentMetadata kept = service.processDocument("kept.txt", "text/plain",
+            new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)));
+        DocumentMetadata removed = service.processDocument("removed.txt", "text/plain",
+            new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)));
+        List<String> failingSegments = registry.get(kept.id()).orElseThrow().segmentIds();
+        InMemoryEmbeddingStore<TextSegment> delegate = (InMemoryEmbeddingStore<TextSegment>) service.embeddingStore;
+        service.embeddingStore = new InMemoryEmbeddingStore<>() {
+            @Override
+            public void removeAll(java.util.Collection<String> ids) {
+                if (ids.containsAll(failingSegments)) {
+                    throw new IllegalStateException("Qdrant timeout");
+                }
+                delegate.removeAll(ids);
+            }
+        };
+
+        // When
+        DocumentProcessingService.BulkDeleteResult result = service.deleteDocuments(List.of(kept.id(), removed.id()));
+
+        // Then
+        assertEquals(List.of(removed.id()), result.deleted());
+        assertEquals("Qdrant timeout", result.failed().get(kept.id()));
+        assertEquals(List.of(kept), service.getAllDocuments());
+    }
+
+    @Test
+    void shouldChunkHtmlUploadedThroughSingleFileEndpointBySection() throws Exception {
+        // Given
+        wireIngestion();
+        DocumentUploadResource resource = new DocumentUploadResource();
+        resource.documentService = service;
+        resource.ingestionJobService = new IngestionJobService(service, 1, 4, Duration.ofMinutes(1));
+        String html = "<html><body><h1>Installation</h1><p>Run the installer.</p>"
+            + "<h2>Configuration</h2><p>Edit the properties file.</p></body></html>";
+
+        // When
+        IngestionJob.Status accepted = (IngestionJob.Status) resource.uploadDocument(
+            new ByteArrayInputStream(html.getBytes(StandardCharsets.UTF_8)), "guide.html").getEntity();
+        IngestionJob job = resource.ingestionJobService.getJob(accepted.jobId()).orElseThrow();
+        for (int i = 0; i < 500 && !job.isFinished(); i++) {
+            Thread.sleep(10);
+        }
+
+        // Then
+        assertEquals(IngestionJob.Stage.STORED, job.stage(), job.status().error());
+        assertEquals("text/html", job.contentType());
+        ChunkingService.Stats section = service.chunking.stats().stream()
+            .filter(stats -> stats.strategy() == ChunkingService.Strategy.SECTION)
+            .findFirst()
+            .orElseThrow();
+        assertEquals(1, section.documents());
+        assertEquals(2, section.chunks());
+        resource.ingestionJobService.stop();
+    }
+
+    @Test
+    void shouldFailIngestWhenExtractionStopsMidDocument() throws Exception {
+        // Given - the parse breaks off after several windows of text, as it does on a corrupt file
+        wireIngestion();
+        String text = paragraphs("Truncated", 1000);
+        AtomicInteger batches = new AtomicInteger();
+        DocumentProcessingService.IngestionProgress breaksOff = new DocumentProcessingService.IngestionProgress() {
+            @Override
+            public void onChunked(int chunks) {
+                if (batches.incrementAndGet() > 10) {
+                    throw new IllegalStateException("Unexpected end of document");
+                }
+            }
+        };
+
+        // When
+        IllegalStateException failure = assertThrows(IllegalStateException.class,
+            () -> service.processDocument("broken.txt", "text/plain",
+                new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)), breaksOff));
+
+        // Then
+        assertTrue(failure.getMessage().startsWith("Text extraction for broken.txt stopped early"), failure.getMessage());
+        assertTrue(service.getAllDocuments().isEmpty());
+        assertTrue(storedSegments().isEmpty());
+        assertTrue(service.lexicalIndex.search("Truncated paragraph", 10).isEmpty());
+        assertEquals(1, meterRegistry.get("rag.ingestion.duration").tag("outcome", "failed").timer().count());
+    }
+
+    @Test
+    void shouldNotRestoreDocumentDeletedWhileScanning() throws Exception {
+        // Given - the document is deleted after the scan has read its points
+        wireIngestion();
+        String text = paragraphs("Deleted", 3);
+        DocumentMetadata document = service.processDocument("deleted.txt", "text/plain",
+            new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)));
+        List<String> segmentIds = registry.get(document.id()).orElseThrow().segmentIds();
+        service.scroller = scroller(consumer -> {
+            for (int i = 0; i < segmentIds.size(); i++) {
+                consumer.accept(point(segmentIds.get(i), document.id(), "deleted.txt", i));
+            }
+            service.deleteDocument(document.id());
+        });
+
+        // When
+        DocumentProcessingService.ReconcileResult result = service.reconcileWithVectorStore();
+
+        // Then
+        assertEquals(0, result.added());
+        assertEquals(1, result.skipped());
+        assertTrue(service.getAllDocuments().isEmpty());
+    }
+
+    @Test
+    void shouldOnlyRestoreDocumentsWithoutMissingChunks() throws Exception {
+        // Given - chunk 2 of the partial document was never stored
+        wireIngestion();
+        service.scroller = scroller(consumer -> {
+            for (int i = 0; i < 3; i++) {
+                consumer.accept(point("complete-" + i, "complete", "complete.txt", i));
+            }
+            for (int i : new int[] {0, 1, 3}) {
+                consumer.accept(point("partial-" + i, "partial", "partial.txt", i));
+            }
+        });
+
+        // When
+        DocumentProcessingService.ReconcileResult result = service.reconcileWithVectorStore();
+
+        // Then
+        assertEquals(1, result.added());
+        assertEquals(1, result.skipped());
+        assertEquals(List.of("complete.txt"), service.getAllDocuments().stream().map(DocumentMetadata::filename).toList());
+        assertEquals(3, service.getAllDocuments().get(0).chunkCount());
+    }
+
+    private AtomicInteger wireIngestion() throws Exception {
+        AtomicInteger embeddedSegments = new AtomicInteger();
+        EmbeddingModel embeddingModel = segments -> {
+            embeddedSegments.addAndGet(segments.size());
+            return Response.from(segments.stream()
+                .map(segment -> Embedding.from(new float[] {segment.text().hashCode(), 1.0f}))
+                .toList());
+        };
+        InMemoryEmbeddingStore<TextSegment> store = new InMemoryEmbeddingStore<>();
+
+        EmbeddingPipeline pipeline = new EmbeddingPipeline();
+        pipeline.embeddingModel = embeddingModel;
+        pipeline.embeddingStore = store;
+        pipeline.metrics = metrics;
+        pipeline.concurrency = 2;
+        pipeline.batchSize = 4;
+        pipeline.start();
+
+        service.embeddingModel = embeddingModel;
+        service.embeddingStore = store;
+        service.metrics = metrics;
+        service.lexicalIndex = new LexicalIndex(8.0, 1.5);
+        service.embeddingPipeline = pipeline;
+        service.answerCache = new SemanticAnswerCache(0.95, 10, Duration.ofMinutes(1), System::currentTimeMillis);
+        service.windowChars = 8192;
+        service.chunking = new ChunkingService(ChunkingService.Strategy.RECURSIVE, List.of("text/html=section"), 64, 8);
+        service.catalog = new DocumentCatalog(Files.createTempDirectory("catalog").resolve("catalog.jsonl"), new ObjectMapper().findAndRegisterModules());
+        return embeddedSegments;
+    }
+
+    private List<TextSegment> storedSegments() {
+        return service.embeddingStore.search(EmbeddingSearchRequest.builder()
+                .queryEmbedding(Embedding.from(new float[] {1.0f, 1.0f}))
+                .maxResults(1000)
+                .minScore(0.0)
+                .build())
+            .matches().stream()
+            .map(EmbeddingMatch::embedded)
+            .toList();
+    }
+
+    private static QdrantCollectionScroller scroller(Consumer<Consumer<QdrantCollectionScroller.ScrolledPoint>> points) {
+        return new QdrantCollectionScroller() {
+            @Override
+            public long scroll(boolean withVectors, Consumer<ScrolledPoint> consumer) {
+                AtomicInteger count = new AtomicInteger();
+                points.accept(point -> {
+                    count.incrementAndGet();
+                    consumer.accept(point);
+                });
+                return count.get();
+            }
+        };
+    }
+
+    private static QdrantCollectionScroller.ScrolledPoint point(String id, String documentId, String filename, int index) {
+        return new QdrantCollectionScroller.ScrolledPoint(id, Map.of("documentId", documentId, "filename", filename,
+            "index", String.valueOf(index), "text_segment", "Chunk " + index + " of " + filename), null);
+    }
+
+    private static String paragraphs(String prefix, int count) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            text.append(prefix).append(" paragraph ").append(i).append(" ")
+                .append("describes one section of the manual in enough detail to fill a chunk of its own. ".repeat(3))
+                .append("\n\n");
+        }
+        return text.toString();
     }
 }
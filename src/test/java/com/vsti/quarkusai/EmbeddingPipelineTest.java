@@ -0,0 +1,127 @@
+package com.vsti.quarkusai;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EmbeddingPipelineTest {
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final InMemoryEmbeddingStore<TextSegment> store = new InMemoryEmbeddingStore<>();
+    private EmbeddingPipeline pipeline;
+
+    @BeforeEach
+    void setUp() {
+        pipeline = new EmbeddingPipeline();
+        pipeline.embeddingStore = store;
+        pipeline.metrics = new RagMetrics(new SimpleMeterRegistry());
+        pipeline.concurrency = 2;
+        pipeline.batchSize = 3;
+        pipeline.embeddingModel = segments -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(20);
+                return Response.from(segments.stream().map(segment -> Embedding.from(new float[] {1.0f, 0.0f})).toList());
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        };
+        pipeline.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        pipeline.stop();
+    }
+
+    @Test
+    void shouldEmbedAndStoreAllSegmentsInOrder() {
+        // Given
+        List<TextSegment> segments = segments(10);
+
+        // When
+        List<String> ids = pipeline.embedAndStore(segments, DocumentProcessingService.IngestionProgress.NONE);
+
+        // Then
+        assertEquals(10, ids.size());
+        assertEquals(10, ids.stream().distinct().count());
+    }
+
+    @Test
+    void shouldNotExceedConcurrencyLimit() {
+        // When
+        pipeline.embedAndStore(segments(30), DocumentProcessingService.IngestionProgress.NONE);
+
+        // Then
+        assertTrue(maxInFlight.get() <= 2, "max in flight was " + maxInFlight.get());
+        assertTrue(maxInFlight.get() >= 1);
+    }
+
+    @Test
+    void shouldReportEmbeddedAndStoredProgress() {
+        // Given
+        AtomicInteger embedded = new AtomicInteger();
+        AtomicInteger stored = new AtomicInteger();
+        DocumentProcessingService.IngestionProgress progress = new DocumentProcessingService.IngestionProgress() {
+            @Override
+            public void onEmbedded(int chunks) {
+                embedded.addAndGet(chunks);
+            }
+
+            @Override
+            public void onStored(int chunks) {
+                stored.addAndGet(chunks);
+            }
+        };
+
+        // When
+        pipeline.embedAndStore(segments(7), progress);
+
+        // Then
+        assertEquals(7, embedded.get());
+        assertEquals(7, stored.get());
+    }
+
+    @Test
+    void shouldPropagateFailureAndRemoveStoredBatches() {
+        // Given
+        AtomicInteger calls = new AtomicInteger();
+        EmbeddingModel healthy = pipeline.embeddingModel;
+        pipeline.embeddingModel = segments -> {
+            if (calls.incrementAndGet() == 2) {
+                throw new IllegalStateException("Ollama unavailable");
+            }
+            return healthy.embedAll(segments);
+        };
+
+        // When
+        IllegalStateException error = assertThrows(IllegalStateException.class,
+            () -> pipeline.embedAndStore(segments(6), DocumentProcessingService.IngestionProgress.NONE));
+
+        // Then
+        assertEquals("Ollama unavailable", error.getMessage());
+        assertTrue(store.search(dev.langchain4j.store.embedding.EmbeddingSearchRequest.builder()
+            .queryEmbedding(Embedding.from(new float[] {1.0f, 0.0f}))
+            .maxResults(10)
+            .build()).matches().isEmpty());
+    }
+
+    private static List<TextSegment> segments(int count) {
+        return IntStream.range(0, count).mapToObj(i -> TextSegment.from("segment " + i)).toList();
+    }
+}
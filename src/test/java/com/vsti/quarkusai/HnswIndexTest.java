@@ -0,0 +1,145 @@
+package com.vsti.quarkusai;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HnswIndexTest {
+
+    private static final int DIMENSIONS = 32;
+
+    private HnswIndex index;
+    private Random random;
+
+    @BeforeEach
+    void setUp() {
+        index = new HnswIndex(16, 200, 42);
+        random = new Random(1);
+        for (int i = 0; i < 2000; i++) {
+            index.add("v" + i, randomVector());
+        }
+    }
+
+    @Test
+    void shouldFindMostExactNeighbours() {
+        // When
+        double recall = recall(index, 10);
+
+        // Then
+        assertTrue(recall >= 0.9, "recall was " + recall);
+    }
+
+    @Test
+    void shouldKeepRecallWithInt8Vectors() {
+        // Given
+        HnswIndex quantized = copy(VectorStorage.Quantization.INT8, false);
+
+        // When
+        double recall = recall(quantized, 10);
+
+        // Then
+        assertTrue(recall >= 0.85, "recall was " + recall);
+        assertTrue(quantized.vectorBytes() * 3 < index.vectorBytes());
+    }
+
+    @Test
+    void shouldRecoverRecallOfBinaryVectorsByRescoring() {
+        // Given
+        HnswIndex binary = copy(VectorStorage.Quantization.BINARY, true);
+
+        // When
+        double recall = recall(binary, 10);
+
+        // Then - uniformly random vectors are the worst case for sign bits, real embeddings do better
+        assertTrue(recall >= 0.75, "recall was " + recall);
+        assertTrue(binary.isExact());
+        assertTrue(binary.vectorBytes() * 16 <= index.vectorBytes());
+        assertEquals(index.vectorBytes(), binary.offHeapBytes());
+    }
+
+    @Test
+    void shouldReturnStoredVectorAsBestMatch() {
+        // When
+        List<HnswIndex.Neighbour> neighbours = index.search(index.vector("v123"), 3, 64, key -> true);
+
+        // Then
+        assertEquals("v123", neighbours.get(0).key());
+        assertEquals(1.0, neighbours.get(0).similarity(), 1e-5);
+    }
+
+    @Test
+    void shouldNotReturnRemovedOrRejectedVectors() {
+        // Given
+        float[] query = index.vector("v7");
+
+        // When
+        index.remove("v7");
+        List<HnswIndex.Neighbour> neighbours = index.search(query, 10, 64, key -> !key.equals("v8"));
+
+        // Then
+        assertEquals(10, neighbours.size());
+        assertTrue(neighbours.stream().noneMatch(neighbour -> neighbour.key().equals("v7") || neighbour.key().equals("v8")));
+        assertEquals(1999, index.size());
+    }
+
+    @Test
+    void shouldReplaceVectorAddedTwiceUnderSameKey() {
+        // Given
+        float[] replacement = randomVector();
+
+        // When
+        index.add("v1", replacement);
+
+        // Then
+        assertEquals(2000, index.size());
+        assertEquals("v1", index.search(replacement, 1, 64, key -> true).get(0).key());
+    }
+
+    @Test
+    void shouldRebuildGraphOnceMostVectorsAreRemoved() {
+        // When
+        for (int i = 0; i < 1001; i++) {
+            index.remove("v" + i);
+        }
+
+        // Then
+        assertEquals(999, index.size());
+        assertEquals(999, index.graphSize());
+        assertEquals("v1999", index.search(index.vector("v1999"), 1, 64, key -> true).get(0).key());
+    }
+
+    // Share of the exact top k (brute force over the unquantized index) found by the given index
+    private double recall(HnswIndex candidate, int k) {
+        int queries = 50;
+        int found = 0;
+        for (int i = 0; i < queries; i++) {
+            float[] query = randomVector();
+            Set<String> exact = new HashSet<>();
+            index.bruteForce(query, k, key -> true).forEach(neighbour -> exact.add(neighbour.key()));
+            found += (int) candidate.search(query, k, 64, key -> true).stream()
+                .filter(neighbour -> exact.contains(neighbour.key()))
+                .count();
+        }
+        return (double) found / (k * queries);
+    }
+
+    private HnswIndex copy(VectorStorage.Quantization quantization, boolean rescore) {
+        HnswIndex copy = new HnswIndex(16, 200, quantization, rescore, 42);
+        index.keys().forEach(key -> copy.add(key, index.vector(key)));
+        return copy;
+    }
+
+    private float[] randomVector() {
+        float[] vector = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,213 @@
+package com.vsti.quarkusai;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IngestionJobServiceTest {
+
+    private IngestionJobService jobs;
+
+    @AfterEach
+    void tearDown() {
+        if (jobs != null) {
+            jobs.stop();
+        }
+    }
+
+    @Test
+    void shouldReportFurthestStageAllChunksHaveReached() {
+        // Given
+        IngestionJob job = new IngestionJob("job", "manual.txt", "text/plain", 10, Path.of("manual.txt"));
+        assertEquals(IngestionJob.Stage.QUEUED, job.stage());
+
+        // When - progress is reported in the order the service reports it
+        job.started();
+        assertEquals(IngestionJob.Stage.PARSING, job.stage());
+        job.onChunked(4);
+        assertEquals(IngestionJob.Stage.PARSING, job.stage());
+        job.onParsed();
+        assertEquals(IngestionJob.Stage.CHUNKED, job.stage());
+        job.onEmbedded(4);
+        assertEquals(IngestionJob.Stage.EMBEDDED, job.stage());
+        job.onStored(4);
+        job.completed(DocumentMetadata.create("id", "manual.txt", "text/plain", 10).withChunkCount(4));
+        assertEquals(IngestionJob.Stage.STORED, job.stage());
+        assertTrue(job.isFinished());
+        assertEquals(4, job.status().storedChunks());
+    }
+
+    @Test
+    void shouldCompleteJobAndRemoveSpooledUpload() throws Exception {
+        // Given
+        StubDocumentService documents = new StubDocumentService();
+        jobs = new IngestionJobService(documents, 1, 2, Duration.ofMinutes(1));
+
+        // When
+        IngestionJob job = submit("manual.txt");
+        awaitFinished(job);
+
+        // Then
+        assertEquals(IngestionJob.Stage.STORED, job.stage());
+        assertEquals("manual.txt", job.status().document().filename());
+        assertEquals(2, job.status().storedChunks());
+        assertFalse(Files.exists(job.file()));
+        assertEquals(1, jobs.stats().completed());
+        assertEquals(1, jobs.stats().submitted());
+    }
+
+    @Test
+    void shouldMarkJobFailedWhenProcessingThrows() throws Exception {
+        // Given
+        StubDocumentService documents = new StubDocumentService();
+        documents.failure = new IOException("Ollama unavailable");
+        jobs = new IngestionJobService(documents, 1, 2, Duration.ofMinutes(1));
+
+        // When
+        IngestionJob job = submit("broken.pdf");
+        awaitFinished(job);
+
+        // Then
+        assertEquals(IngestionJob.Stage.FAILED, job.stage());
+        assertEquals("Failed to process broken.pdf: Ollama unavailable", job.status().error());
+        assertNull(job.status().document());
+        assertFalse(Files.exists(job.file()));
+        assertEquals(1, jobs.stats().failed());
+        assertEquals(0, jobs.stats().completed());
+    }
+
+    @Test
+    void shouldRejectUploadsBeyondQueueCapacity() throws Exception {
+        // Given - one worker busy and one job waiting fill the service
+        StubDocumentService documents = new StubDocumentService();
+        documents.release = new CountDownLatch(1);
+        jobs = new IngestionJobService(documents, 1, 1, Duration.ofMinutes(1));
+        IngestionJob running = submit("first.txt");
+        assertTrue(documents.started.await(5, TimeUnit.SECONDS));
+        IngestionJob queued = submit("second.txt");
+
+        // When
+        IngestionJobService.QueueFullException rejected =
+            assertThrows(IngestionJobService.QueueFullException.class, () -> submit("third.txt"));
+
+        // Then
+        assertTrue(rejected.getMessage().contains("1 pending jobs"));
+        assertEquals(1, jobs.stats().rejected());
+        assertEquals(1, jobs.stats().queueDepth());
+        assertEquals(2, jobs.getJobs().size());
+
+        documents.release.countDown();
+        awaitFinished(running);
+        awaitFinished(queued);
+        assertEquals(IngestionJob.Stage.STORED, queued.stage());
+    }
+
+    @Test
+    void shouldReportUnchangedReuploadAsStored() throws Exception {
+        // Given
+        StubDocumentService documents = new StubDocumentService();
+        documents.unchanged = true;
+        jobs = new IngestionJobService(documents, 1, 2, Duration.ofMinutes(1));
+
+        // When
+        IngestionJob job = submit("manual.txt");
+        awaitFinished(job);
+
+        // Then
+        IngestionJob.Status status = job.status();
+        assertEquals(IngestionJob.Stage.STORED, status.stage());
+        assertTrue(status.unchanged());
+        assertEquals(0, status.totalChunks());
+        assertEquals(0, status.embeddedChunks());
+        assertNotNull(status.document());
+    }
+
+    @Test
+    void shouldRemoveSpoolFileWhenUploadBreaksOff() throws Exception {
+        // Given - the client goes away after the first bytes
+        jobs = new IngestionJobService(new StubDocumentService(), 1, 2, Duration.ofMinutes(1));
+        Set<Path> spooledBefore = spoolFiles();
+        InputStream aborted = new SequenceInputStream(new ByteArrayInputStream("partial".getBytes(StandardCharsets.UTF_8)),
+            new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    throw new IOException("Connection reset");
+                }
+            });
+
+        // When
+        IOException failure = assertThrows(IOException.class, () -> jobs.submit("manual.txt", "text/plain", aborted));
+
+        // Then
+        assertEquals("Connection reset", failure.getMessage());
+        assertEquals(spooledBefore, spoolFiles());
+        assertTrue(jobs.getJobs().isEmpty());
+    }
+
+    private static Set<Path> spoolFiles() throws IOException {
+        try (Stream<Path> files = Files.list(Path.of(System.getProperty("java.io.tmpdir")))) {
+            return files.filter(file -> file.getFileName().toString().startsWith("ingestion-")).collect(Collectors.toSet());
+        }
+    }
+
+    private IngestionJob submit(String filename) throws IOException {
+        return jobs.submit(filename, "text/plain", new ByteArrayInputStream("content".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static void awaitFinished(IngestionJob job) throws InterruptedException {
+        for (int i = 0; i < 500 && !job.isFinished(); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(job.isFinished(), "job still " + job.stage());
+    }
+
+    // Reports progress like the real service without parsing or embedding anything
+    private static class StubDocumentService extends DocumentProcessingService {
+
+        final CountDownLatch started = new CountDownLatch(1);
+        volatile CountDownLatch release;
+        volatile IOException failure;
+        volatile boolean unchanged;
+
+        @Override
+        public DocumentMetadata processDocument(String filename, String contentType, Path file, IngestionProgress progress)
+                throws IOException {
+            started.countDown();
+            if (release != null) {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            DocumentMetadata metadata = DocumentMetadata.create("id-" + filename, filename, contentType, Files.size(file));
+            if (unchanged) {
+                progress.onUnchanged();
+                return metadata;
+            }
+            progress.onChunked(2);
+            progress.onParsed();
+            progress.onEmbedded(2);
+            progress.onStored(2);
+            return metadata.withChunkCount(2);
+        }
+    }
+}
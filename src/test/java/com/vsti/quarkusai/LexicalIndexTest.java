@@ -0,0 +1,103 @@
+package com.vsti.quarkusai;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LexicalIndexTest {
+
+    private LexicalIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new LexicalIndex(3.0, 1.5);
+        add("s1", "Error ERR-4711 means the license server could not be reached.");
+        add("s2", "The license is renewed every year by the administrator.");
+        add("s3", "Restart the service after changing the configuration file.");
+    }
+
+    @Test
+    void shouldTokenizeCodesAndDropStopWords() {
+        // When
+        List<String> tokens = LexicalIndex.tokenize("What does ERR-4711 mean?");
+
+        // Then
+        assertEquals(List.of("err", "4711", "mean"), tokens);
+    }
+
+    @Test
+    void shouldRankChunkWithRareTermFirst() {
+        // When
+        List<LexicalIndex.Hit> hits = index.search("ERR-4711 license", 10);
+
+        // Then
+        assertEquals("s1", hits.get(0).segmentId());
+        assertEquals(1.0, hits.get(0).coverage());
+        assertEquals("s2", hits.get(1).segmentId());
+        assertTrue(hits.get(1).coverage() < 1.0);
+    }
+
+    @Test
+    void shouldBeConfidentOnlyForClearFullMatch() {
+        // Given - enough unrelated chunks for the code to be rare
+        IntStream.range(0, 20).forEach(i -> add("filler-" + i, "Chapter " + i + " describes the user interface."));
+
+        // When
+        List<LexicalIndex.Hit> code = index.search("ERR-4711", 10);
+        List<LexicalIndex.Hit> vague = index.search("license renewal policy", 10);
+
+        // Then
+        assertTrue(index.isConfident(code));
+        assertFalse(index.isConfident(vague));
+    }
+
+    @Test
+    void shouldNotReturnRemovedChunks() {
+        // When
+        index.removeAll(List.of("s1"));
+
+        // Then
+        assertTrue(index.search("ERR-4711", 10).isEmpty());
+        assertEquals(2, index.stats().chunks());
+    }
+
+    @Test
+    void shouldRebuildPostingsOnceMostChunksAreRemoved() {
+        // Given
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 1500; i++) {
+            ids.add("bulk-" + i);
+            add("bulk-" + i, "Bulk chunk number " + i + " about storage.");
+        }
+
+        // When
+        index.removeAll(ids);
+
+        // Then
+        assertEquals(0, index.stats().removedChunks());
+        assertEquals(3, index.stats().chunks());
+        assertEquals("s3", index.search("restart service", 10).get(0).segmentId());
+    }
+
+    @Test
+    void shouldIgnoreChunksThatAreAlreadyIndexed() {
+        // When
+        add("s1", "Error ERR-4711 means the license server could not be reached.");
+
+        // Then
+        assertEquals(3, index.stats().chunks());
+        assertEquals(1, index.search("ERR-4711", 10).size());
+    }
+
+    private void add(String segmentId, String text) {
+        Metadata metadata = new Metadata().put("documentId", "doc-" + segmentId).put("filename", segmentId + ".txt");
+        index.addAll(List.of(segmentId), List.of(TextSegment.from(text, metadata)));
+    }
+}
@@ -0,0 +1,64 @@
+package com.vsti.quarkusai;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MmrRerankerTest {
+
+    @Test
+    void shouldSkipNearDuplicateOfFirstPick() {
+        // Given - two copies of one section rank above a different section
+        float[][] vectors = {{1, 0, 0}, {0.99f, 0.05f, 0}, {0, 1, 0}};
+        double[] relevance = {0.90, 0.89, 0.80};
+        String[] documentIds = {"a", "b", "c"};
+
+        // When
+        int[] picked = new MmrReranker(2, 0.7, 3).select(vectors, relevance, documentIds);
+
+        // Then
+        assertArrayEquals(new int[] {0, 2}, picked);
+    }
+
+    @Test
+    void shouldRankByRelevanceAloneWithLambdaOne() {
+        // Given
+        float[][] vectors = {{1, 0, 0}, {0.99f, 0.05f, 0}, {0, 1, 0}};
+        double[] relevance = {0.90, 0.89, 0.80};
+        String[] documentIds = {"a", "b", "c"};
+
+        // When
+        int[] picked = new MmrReranker(2, 1.0, 3).select(vectors, relevance, documentIds);
+
+        // Then
+        assertArrayEquals(new int[] {0, 1}, picked);
+    }
+
+    @Test
+    void shouldCapChunksPerDocument() {
+        // Given - unrelated chunks, the best three from one document
+        float[][] vectors = {{1, 0, 0, 0}, {0, 1, 0, 0}, {0, 0, 1, 0}, {0, 0, 0, 1}};
+        double[] relevance = {0.9, 0.85, 0.8, 0.5};
+        String[] documentIds = {"a", "a", "a", "b"};
+
+        // When
+        int[] picked = new MmrReranker(3, 0.7, 2).select(vectors, relevance, documentIds);
+
+        // Then
+        assertArrayEquals(new int[] {0, 1, 3}, picked);
+    }
+
+    @Test
+    void shouldReturnFewerThanKWhenCandidatesRunOut() {
+        // Given
+        float[][] vectors = {{1, 0}, null};
+        double[] relevance = {0.9, 0.8};
+        String[] documentIds = {"a", "a"};
+
+        // When
+        int[] picked = new MmrReranker(3, 0.7, 1).select(vectors, relevance, documentIds);
+
+        // Then
+        assertArrayEquals(new int[] {0}, picked);
+    }
+}
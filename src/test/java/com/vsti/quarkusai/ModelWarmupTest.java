@@ -0,0 +1,39 @@
+package com.vsti.quarkusai;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ModelWarmupTest {
+
+    @Test
+    void shouldKeepModelsAliveWithinDaytimeHours() {
+        // Given
+        String hours = "07:00-19:00";
+
+        // Then
+        assertTrue(ModelWarmup.withinHours(hours, LocalTime.of(7, 0)));
+        assertTrue(ModelWarmup.withinHours(hours, LocalTime.of(12, 30)));
+        assertFalse(ModelWarmup.withinHours(hours, LocalTime.of(19, 0)));
+        assertFalse(ModelWarmup.withinHours(hours, LocalTime.of(3, 0)));
+    }
+
+    @Test
+    void shouldSpanMidnightWhenWindowEndsBeforeItStarts() {
+        // Given
+        String hours = "22:00-06:00";
+
+        // Then
+        assertTrue(ModelWarmup.withinHours(hours, LocalTime.of(23, 15)));
+        assertTrue(ModelWarmup.withinHours(hours, LocalTime.of(5, 59)));
+        assertFalse(ModelWarmup.withinHours(hours, LocalTime.of(12, 0)));
+    }
+
+    @Test
+    void shouldTreatEqualBoundsAsWholeDay() {
+        // Then
+        assertTrue(ModelWarmup.withinHours("00:00-00:00", LocalTime.of(15, 0)));
+    }
+}
@@ -0,0 +1,81 @@
+package com.vsti.quarkusai;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.segment.TextSegment;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PackingSplitterTest {
+
+    @Test
+    void shouldPackWholeSentencesUpToTheTokenBudget() {
+        // Given
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            text.append("Sentence number ").append(i).append(" explains chunking. ");
+        }
+        PackingSplitter splitter = new PackingSplitter(PackingSplitter.Unit.SENTENCE, 64, 16);
+
+        // When
+        List<TextSegment> segments = splitter.split(Document.from(text.toString()));
+
+        // Then
+        assertTrue(segments.size() > 1);
+        for (TextSegment segment : segments) {
+            assertTrue(ContextAssembler.estimateTokens(segment.text()) <= 64);
+            assertTrue(segment.text().startsWith("Sentence number "), segment.text());
+            assertTrue(segment.text().endsWith("chunking."), segment.text());
+        }
+    }
+
+    @Test
+    void shouldRepeatTrailingSentencesOfThePreviousChunk() {
+        // Given
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            text.append("Fact ").append(i).append(" is here. ");
+        }
+        PackingSplitter splitter = new PackingSplitter(PackingSplitter.Unit.SENTENCE, 20, 5);
+
+        // When
+        List<TextSegment> segments = splitter.split(Document.from(text.toString()));
+
+        // Then
+        for (int i = 1; i < segments.size(); i++) {
+            String previous = segments.get(i - 1).text();
+            String firstSentence = segments.get(i).text().substring(0, segments.get(i).text().indexOf('.') + 1);
+            assertTrue(previous.endsWith(firstSentence), previous + " / " + firstSentence);
+        }
+    }
+
+    @Test
+    void shouldPackWordsOfSentencesLongerThanAChunk() {
+        // Given
+        String sentence = "word ".repeat(500).strip() + ".";
+        PackingSplitter splitter = new PackingSplitter(PackingSplitter.Unit.SENTENCE, 100, 10);
+
+        // When
+        List<TextSegment> segments = splitter.split(Document.from(sentence));
+
+        // Then
+        assertTrue(segments.size() >= 5);
+        assertTrue(segments.stream().allMatch(segment -> ContextAssembler.estimateTokens(segment.text()) <= 100));
+        assertTrue(segments.stream().allMatch(segment -> segment.text().startsWith("word")));
+    }
+
+    @Test
+    void shouldCutWordsLongerThanAChunk() {
+        // Given
+        PackingSplitter splitter = new PackingSplitter(PackingSplitter.Unit.WORD, 10, 2);
+
+        // When
+        List<TextSegment> segments = splitter.split(Document.from("a".repeat(100)));
+
+        // Then
+        assertEquals(3, segments.size());
+        assertEquals("a".repeat(100), String.join("", segments.stream().map(TextSegment::text).toList()));
+    }
+}
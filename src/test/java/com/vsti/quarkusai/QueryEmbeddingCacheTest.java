@@ -0,0 +1,78 @@
+package com.vsti.quarkusai;
+
+import dev.langchain4j.data.embedding.Embedding;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryEmbeddingCacheTest {
+
+    private final AtomicLong now = new AtomicLong(0);
+    private final AtomicInteger loads = new AtomicInteger();
+    private QueryEmbeddingCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new QueryEmbeddingCache(2, Duration.ofMinutes(10), "nomic-embed-text", now::get);
+    }
+
+    @Test
+    void shouldReuseEmbeddingForNormalizedRepeat() {
+        // When
+        Embedding first = cache.get("How do I reset my password?", this::load);
+        Embedding second = cache.get("  how do I   RESET my password?  ", this::load);
+
+        // Then
+        assertSame(first, second);
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.stats().hits());
+        assertEquals(1, cache.stats().misses());
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsedEntryWhenFull() {
+        // Given
+        cache.get("first", this::load);
+        cache.get("second", this::load);
+        cache.get("first", this::load); // first is now the most recently used
+
+        // When
+        cache.get("third", this::load);
+        cache.get("first", this::load);
+        cache.get("second", this::load);
+
+        // Then - only "second" had to be loaded again
+        assertEquals(4, loads.get());
+        assertTrue(cache.stats().evictions() >= 1);
+        assertEquals(2, cache.stats().size());
+    }
+
+    @Test
+    void shouldExpireEntriesAfterTtl() {
+        // Given
+        cache.get("question", this::load);
+
+        // When
+        now.addAndGet(Duration.ofMinutes(11).toMillis());
+        cache.get("question", this::load);
+
+        // Then
+        assertEquals(2, loads.get());
+        assertEquals(1, cache.stats().evictions());
+    }
+
+    @Test
+    void shouldNormalizeWhitespaceAndCase() {
+        assertEquals("hello world", QueryEmbeddingCache.normalize("  Hello \t\n World "));
+    }
+
+    private Embedding load() {
+        loads.incrementAndGet();
+        return Embedding.from(new float[] {loads.get(), 0.5f});
+    }
+}
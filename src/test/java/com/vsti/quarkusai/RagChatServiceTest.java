@@ -2,6 +2,7 @@ package com.vsti.quarkusai;
 
 import org.junit.jupiter.api.Test;
 import java.lang.reflect.Method;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -69,6 +70,46 @@ class RagChatServiceTest {
         assertTrue(result3.contains("Question: "));
     }
 
+    @Test
+    void shouldComputeStreamStatsFromTimestamps() {
+        // Given - 200 ms until the first token, 20 tokens over the following second
+        long startedAt = 1_000_000_000L;
+        long firstTokenAt = startedAt + 200_000_000L;
+        long completedAt = firstTokenAt + 1_000_000_000L;
+
+        // When
+        RagChatService.StreamStats stats = RagChatService.StreamStats.of(startedAt, firstTokenAt, completedAt, 20);
+
+        // Then
+        assertEquals(200, stats.timeToFirstTokenMs());
+        assertEquals(1200, stats.totalMs());
+        assertEquals(20.0, stats.tokensPerSecond(), 0.001);
+        assertTrue(stats.toJson().contains("\"timeToFirstTokenMs\":200"));
+    }
+
+    @Test
+    void shouldUseTotalTimeWhenNoTokenWasStreamed() {
+        // When
+        RagChatService.StreamStats stats = RagChatService.StreamStats.of(0L, 0L, 500_000_000L, 0);
+
+        // Then
+        assertEquals(500, stats.timeToFirstTokenMs());
+        assertEquals(0.0, stats.tokensPerSecond(), 0.001);
+    }
+
+    @Test
+    void shouldRankChunksFoundByBothRetrieversFirst() {
+        // Given
+        List<String> vectorRanking = List.of("a", "b", "c");
+        List<String> lexicalRanking = List.of("d", "c");
+
+        // When
+        List<String> fused = RagChatService.reciprocalRankFusion(List.of(vectorRanking, lexicalRanking), 60);
+
+        // Then - c appears in both rankings, a and d lead their own
+        assertEquals(List.of("c", "a", "d", "b"), fused);
+    }
+
     private String invokePrivateMethod(RagChatService service, String methodName, String userMessage, String context) throws Exception {
         Method method = RagChatService.class.getDeclaredMethod(methodName, String.class, String.class);
         method.setAccessible(true);
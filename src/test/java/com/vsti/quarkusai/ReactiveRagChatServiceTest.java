@@ -0,0 +1,164 @@
+package com.vsti.quarkusai;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.subscription.Cancellable;
+import io.smallrye.mutiny.subscription.MultiEmitter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReactiveRagChatServiceTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final RagMetrics metrics = new RagMetrics(meterRegistry);
+    private final Bulkhead generationBulkhead = new Bulkhead("generation", 1, 4, Duration.ofSeconds(5), name -> {});
+    private final AtomicInteger generations = new AtomicInteger();
+    private final CountDownLatch generating = new CountDownLatch(1);
+    private volatile MultiEmitter<? super String> tokens;
+    private volatile boolean generationCancelled;
+    private ReactiveRagChatService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new ReactiveRagChatService();
+        service.ragChatService = new StubRagChatService();
+        service.streamingAiService = prompt -> Multi.createFrom().<String>emitter(emitter -> {
+            generations.incrementAndGet();
+            tokens = emitter;
+            generating.countDown();
+        }).onCancellation().invoke(() -> generationCancelled = true);
+        service.metrics = metrics;
+        service.singleFlight = true;
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.stop();
+    }
+
+    @Test
+    void shouldGenerateOnceForIdenticalConcurrentQuestions() throws Exception {
+        // Given - the first answer is still being generated when the second question arrives
+        Uni<RagChatService.ChatResponse> first = service.chat(null, "What is ERR-4711?");
+        Uni<RagChatService.ChatResponse> second = service.chat(null, "  what is err-4711? ");
+        assertTrue(generating.await(5, TimeUnit.SECONDS));
+
+        // When
+        tokens.emit("The license server is down.");
+        tokens.complete();
+
+        // Then
+        RagChatService.ChatResponse firstResponse = first.await().atMost(Duration.ofSeconds(5));
+        RagChatService.ChatResponse secondResponse = second.await().atMost(Duration.ofSeconds(5));
+        assertEquals("The license server is down.", firstResponse.response());
+        assertEquals(firstResponse, secondResponse);
+        assertEquals(1, generations.get());
+        assertEquals(1.0, meterRegistry.counter("rag.chat.coalesced").count());
+        assertEquals(0, generationBulkhead.active());
+    }
+
+    @Test
+    void shouldKeepStreamingToRemainingSubscriberWhenOneCancels() throws Exception {
+        // Given
+        RecordingHandler leaving = new RecordingHandler();
+        RecordingHandler staying = new RecordingHandler();
+        Cancellable leavingStream = service.chatStream("What is ERR-4711?", leaving);
+        service.chatStream("What is ERR-4711?", staying);
+        assertTrue(generating.await(5, TimeUnit.SECONDS));
+        tokens.emit("The license server");
+
+        // When
+        leavingStream.cancel();
+        tokens.emit(" is down.");
+        tokens.complete();
+
+        // Then
+        assertTrue(staying.completed.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of("sources:manual.pdf", "The license server", " is down.", "complete"), staying.events);
+        assertEquals(List.of("sources:manual.pdf", "The license server"), leaving.events);
+        assertEquals(1, generations.get());
+        assertFalse(generationCancelled);
+        assertEquals(0.0, meterRegistry.counter("rag.chat.cancelled").count());
+        assertEquals(0, generationBulkhead.active());
+    }
+
+    @Test
+    void shouldCancelGenerationOnceEverySubscriberLeft() throws Exception {
+        // Given
+        RecordingHandler first = new RecordingHandler();
+        RecordingHandler second = new RecordingHandler();
+        Cancellable firstStream = service.chatStream("What is ERR-4711?", first);
+        Cancellable secondStream = service.chatStream("What is ERR-4711?", second);
+        assertTrue(generating.await(5, TimeUnit.SECONDS));
+
+        // When
+        firstStream.cancel();
+        secondStream.cancel();
+
+        // Then
+        assertTrue(generationCancelled);
+        assertEquals(1.0, meterRegistry.counter("rag.chat.cancelled").count());
+        assertEquals(0, generationBulkhead.active());
+    }
+
+    // Retrieval always finds the same manual, admission goes through a bulkhead with one permit
+    private class StubRagChatService extends RagChatService {
+
+        StubRagChatService() {
+            metrics = ReactiveRagChatServiceTest.this.metrics;
+        }
+
+        @Override
+        Prepared prepare(String userMessage, Timer.Sample request, boolean cacheable) {
+            RetrievedContext context = new RetrievedContext(buildPromptWithContext(userMessage, "ERR-4711 means the license server is down."),
+                "ERR-4711 means the license server is down.", List.of("manual.pdf"), Set.of("doc-1"));
+            return new Prepared(null, context, null, "answered", 0);
+        }
+
+        @Override
+        Bulkhead.Permit acquireGeneration(Timer.Sample request) {
+            return generationBulkhead.acquire();
+        }
+    }
+
+    private static class RecordingHandler implements RagChatService.StreamHandler {
+
+        final List<String> events = new CopyOnWriteArrayList<>();
+        final CountDownLatch completed = new CountDownLatch(1);
+
+        @Override
+        public void onSources(List<String> sources) {
+            events.add("sources:" + String.join(",", sources));
+        }
+
+        @Override
+        public void onToken(String token) {
+            events.add(token);
+        }
+
+        @Override
+        public void onComplete(RagChatService.StreamStats stats) {
+            events.add("complete");
+            completed.countDown();
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            events.add("error");
+            completed.countDown();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.vsti.quarkusai;
+
+import dev.langchain4j.data.embedding.Embedding;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SemanticAnswerCacheTest {
+
+    private final AtomicLong now = new AtomicLong(0);
+    private SemanticAnswerCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new SemanticAnswerCache(0.95, 10, Duration.ofMinutes(30), now::get);
+    }
+
+    @Test
+    void shouldReturnAnswerForSimilarQuery() {
+        // Given
+        RagChatService.ChatResponse response = new RagChatService.ChatResponse("Use the reset link.", List.of("faq.pdf"));
+        cache.put(embedding(1.0f, 0.0f, 0.0f), response, Set.of("doc-1"), cache.version());
+
+        // When
+        Optional<RagChatService.ChatResponse> hit = cache.lookup(embedding(0.99f, 0.05f, 0.0f));
+        Optional<RagChatService.ChatResponse> miss = cache.lookup(embedding(0.0f, 1.0f, 0.0f));
+
+        // Then
+        assertEquals(Optional.of(response), hit);
+        assertTrue(miss.isEmpty());
+        assertEquals(1, cache.stats().hits());
+        assertEquals(1, cache.stats().misses());
+    }
+
+    @Test
+    void shouldInvalidateAnswersBuiltFromDeletedDocument() {
+        // Given
+        cache.put(embedding(1.0f, 0.0f, 0.0f), answer("from doc-1"), Set.of("doc-1"), cache.version());
+        cache.put(embedding(0.0f, 1.0f, 0.0f), answer("from doc-2"), Set.of("doc-2"), cache.version());
+
+        // When
+        cache.invalidateDocument("doc-1");
+
+        // Then
+        assertTrue(cache.lookup(embedding(1.0f, 0.0f, 0.0f)).isEmpty());
+        assertTrue(cache.lookup(embedding(0.0f, 1.0f, 0.0f)).isPresent());
+        assertEquals(1, cache.stats().invalidations());
+    }
+
+    @Test
+    void shouldDropContextFreeAnswersWhenDocumentIsAdded() {
+        // Given
+        cache.put(embedding(1.0f, 0.0f, 0.0f), answer("general answer"), Set.of(), cache.version());
+
+        // When
+        cache.invalidateContextFree();
+
+        // Then
+        assertEquals(0, cache.stats().size());
+    }
+
+    @Test
+    void shouldRejectAnswerRetrievedBeforeInvalidation() {
+        // Given
+        long versionAtRetrieval = cache.version();
+        cache.invalidateDocument("doc-1");
+
+        // When
+        cache.put(embedding(1.0f, 0.0f, 0.0f), answer("stale"), Set.of("doc-1"), versionAtRetrieval);
+
+        // Then
+        assertEquals(0, cache.stats().size());
+    }
+
+    @Test
+    void shouldExpireAnswersAfterTtl() {
+        // Given
+        cache.put(embedding(1.0f, 0.0f, 0.0f), answer("old"), Set.of("doc-1"), cache.version());
+
+        // When
+        now.addAndGet(Duration.ofMinutes(31).toMillis());
+
+        // Then
+        assertTrue(cache.lookup(embedding(1.0f, 0.0f, 0.0f)).isEmpty());
+    }
+
+    private static Embedding embedding(float... values) {
+        return Embedding.from(values);
+    }
+
+    private static RagChatService.ChatResponse answer(String text) {
+        return new RagChatService.ChatResponse(text, List.of());
+    }
+}
@@ -0,0 +1,145 @@
+package com.vsti.quarkusai;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamBroadcastTest {
+
+    private final List<StreamBroadcast> finished = new ArrayList<>();
+
+    @Test
+    void shouldReplayEarlierEventsToLateSubscriber() {
+        // Given
+        RecordingHandler first = new RecordingHandler();
+        RecordingHandler late = new RecordingHandler();
+        StreamBroadcast broadcast = new StreamBroadcast(first, finished::add);
+        broadcast.onSources(List.of("manual.pdf"));
+        broadcast.onToken("Hello");
+
+        // When
+        assertTrue(broadcast.join(late));
+        broadcast.onToken(" world");
+        broadcast.onComplete(new RagChatService.StreamStats(10, 20, 2));
+
+        // Then
+        assertEquals(List.of("sources:manual.pdf", "Hello", " world", "complete"), first.events);
+        assertEquals(List.of("sources:manual.pdf", "Hello", " world", "complete"), late.events);
+        assertEquals(List.of(broadcast), finished);
+    }
+
+    @Test
+    void shouldRefuseSubscribersAfterCompletion() {
+        // Given
+        StreamBroadcast broadcast = new StreamBroadcast(new RecordingHandler(), finished::add);
+        broadcast.onError(new IllegalStateException("model unavailable"));
+
+        // When / Then
+        assertFalse(broadcast.join(new RecordingHandler()));
+    }
+
+    @Test
+    void shouldKeepStreamingWhenOneSubscriberFails() {
+        // Given - the first client disconnected, sending to it throws
+        RecordingHandler broken = new RecordingHandler();
+        broken.failOnToken = true;
+        RecordingHandler healthy = new RecordingHandler();
+        StreamBroadcast broadcast = new StreamBroadcast(broken, finished::add);
+        broadcast.join(healthy);
+
+        // When
+        broadcast.onToken("a");
+        broadcast.onToken("b");
+        broadcast.onComplete(new RagChatService.StreamStats(10, 20, 2));
+
+        // Then
+        assertEquals(1, broadcast.subscribers());
+        assertEquals(List.of("a", "b", "complete"), healthy.events);
+        assertTrue(broken.events.isEmpty());
+    }
+
+    @Test
+    void shouldKeepGeneratingWhileAnySubscriberRemains() {
+        // Given
+        RecordingHandler first = new RecordingHandler();
+        RecordingHandler second = new RecordingHandler();
+        List<String> abandoned = new ArrayList<>();
+        StreamBroadcast broadcast = new StreamBroadcast(first, finished::add);
+        broadcast.onAbandoned(() -> abandoned.add("cancel"));
+        broadcast.join(second);
+
+        // When
+        broadcast.leave(first);
+        broadcast.onToken("a");
+
+        // Then
+        assertTrue(abandoned.isEmpty());
+        assertEquals(List.of("a"), second.events);
+        assertTrue(first.events.isEmpty());
+    }
+
+    @Test
+    void shouldAbandonAnswerOnceLastSubscriberLeft() {
+        // Given
+        RecordingHandler only = new RecordingHandler();
+        List<String> abandoned = new ArrayList<>();
+        StreamBroadcast broadcast = new StreamBroadcast(only, finished::add);
+        broadcast.onAbandoned(() -> abandoned.add("cancel"));
+
+        // When
+        broadcast.leave(only);
+
+        // Then
+        assertEquals(List.of("cancel"), abandoned);
+        assertEquals(List.of(broadcast), finished);
+        assertFalse(broadcast.join(new RecordingHandler()));
+    }
+
+    @Test
+    void shouldAbandonAnswerWhenLastSubscriberFails() {
+        // Given - the callback is registered after the failure
+        RecordingHandler broken = new RecordingHandler();
+        broken.failOnToken = true;
+        List<String> abandoned = new ArrayList<>();
+        StreamBroadcast broadcast = new StreamBroadcast(broken, finished::add);
+        broadcast.onToken("a");
+
+        // When
+        broadcast.onAbandoned(() -> abandoned.add("cancel"));
+
+        // Then
+        assertEquals(List.of("cancel"), abandoned);
+    }
+
+    private static class RecordingHandler implements RagChatService.StreamHandler {
+
+        final List<String> events = new ArrayList<>();
+        boolean failOnToken;
+
+        @Override
+        public void onSources(List<String> sources) {
+            events.add("sources:" + String.join(",", sources));
+        }
+
+        @Override
+        public void onToken(String token) {
+            if (failOnToken) {
+                throw new IllegalStateException("connection closed");
+            }
+            events.add(token);
+        }
+
+        @Override
+        public void onComplete(RagChatService.StreamStats stats) {
+            events.add("complete");
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            events.add("error");
+        }
+    }
+}
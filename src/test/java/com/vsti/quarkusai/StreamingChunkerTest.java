@@ -0,0 +1,125 @@
+package com.vsti.quarkusai;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.segment.TextSegment;
+import org.junit.jupiter.api.Test;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.helpers.AttributesImpl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamingChunkerTest {
+
+    private final DocumentSplitter splitter = DocumentSplitters.recursive(300, 50);
+
+    @Test
+    void shouldEmitSegmentsInBatchesWhileTextArrives() {
+        // Given
+        List<List<TextSegment>> batches = new ArrayList<>();
+        StreamingChunker chunker = new StreamingChunker(splitter, 2000, 50, 4, batches::add);
+
+        // When - feed far more text than a single window
+        for (int i = 0; i < 200; i++) {
+            chunker.append("Sentence number " + i + " talks about streaming extraction of large documents. ");
+            if (i == 100) {
+                // Then - batches have already been emitted before the end of the document
+                assertFalse(batches.isEmpty());
+            }
+        }
+        chunker.finish();
+
+        // Then
+        assertTrue(batches.stream().allMatch(batch -> batch.size() <= 4));
+        int total = batches.stream().mapToInt(List::size).sum();
+        assertEquals(chunker.segmentCount(), total);
+        assertTrue(batches.stream().flatMap(List::stream).allMatch(segment -> segment.text().length() <= 300));
+    }
+
+    @Test
+    void shouldCoverAllTextOfTheDocument() {
+        // Given
+        List<TextSegment> segments = new ArrayList<>();
+        StreamingChunker chunker = new StreamingChunker(splitter, 1000, 50, 8, segments::addAll);
+        StringBuilder document = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            document.append("Paragraph ").append(i).append(" mentions keyword").append(i).append(".\n\n");
+        }
+
+        // When
+        chunker.append(document.toString());
+        chunker.finish();
+
+        // Then
+        String joined = String.join(" ", segments.stream().map(TextSegment::text).toList());
+        for (int i = 0; i < 100; i++) {
+            assertTrue(joined.contains("keyword" + i + "."), "missing keyword" + i);
+        }
+    }
+
+    @Test
+    void shouldMatchRegularSplitterForTextSmallerThanWindow() {
+        // Given
+        String text = "A short document. It fits into a single window.\n\nSecond paragraph.";
+        List<TextSegment> segments = new ArrayList<>();
+        StreamingChunker chunker = new StreamingChunker(splitter, 8192, 50, 32, segments::addAll);
+
+        // When
+        chunker.append(text);
+        chunker.finish();
+
+        // Then
+        List<String> expected = splitter.split(Document.from(text)).stream().map(TextSegment::text).toList();
+        assertEquals(expected, segments.stream().map(TextSegment::text).toList());
+        assertEquals("0", segments.get(0).metadata().getString("index"));
+    }
+
+    @Test
+    void shouldNotEmitAnythingForBlankText() {
+        // Given
+        List<TextSegment> segments = new ArrayList<>();
+        StreamingChunker chunker = new StreamingChunker(splitter, 1000, 50, 8, segments::addAll);
+
+        // When
+        chunker.append("   \n\n  ");
+        chunker.finish();
+
+        // Then
+        assertTrue(segments.isEmpty());
+        assertEquals(0, chunker.segmentCount());
+    }
+
+    @Test
+    void shouldStartNewSegmentsAtHeadingsWhenSectionAware() throws Exception {
+        // Given
+        List<TextSegment> segments = new ArrayList<>();
+        StreamingChunker chunker = new StreamingChunker(new PackingSplitter(PackingSplitter.Unit.SENTENCE, 256, 32), 8192, 50, 8,
+            true, segments::addAll);
+        ContentHandler handler = chunker.contentHandler();
+
+        // When
+        element(handler, "h1", "Installation");
+        element(handler, "p", "Run the installer and restart.");
+        element(handler, "h2", "Configuration");
+        element(handler, "p", "Edit the properties file.");
+        chunker.finish();
+
+        // Then
+        assertEquals(2, segments.size());
+        assertEquals("Installation\nRun the installer and restart.", segments.get(0).text());
+        assertEquals("Installation", segments.get(0).metadata().getString("section"));
+        assertEquals("Configuration\nEdit the properties file.", segments.get(1).text());
+        assertEquals("Configuration", segments.get(1).metadata().getString("section"));
+    }
+
+    private static void element(ContentHandler handler, String name, String text) throws Exception {
+        handler.startElement("http://www.w3.org/1999/xhtml", name, name, new AttributesImpl());
+        handler.characters(text.toCharArray(), 0, text.length());
+        handler.endElement("http://www.w3.org/1999/xhtml", name, name);
+        handler.ignorableWhitespace(new char[] {'\n'}, 0, 1);
+    }
+}